@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.view.View;
+import android.widget.AbsListView;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class TestForecastAdapterUpdates extends AndroidTestCase {
+
+    private static final int DAYS = 14;
+    private static final long TODAY = System.currentTimeMillis();
+
+    private RecyclerView mRecyclerView;
+    private CountingAdapter mAdapter;
+
+    /**
+     * Counts how many rows get bound.
+     */
+    private static class CountingAdapter extends ForecastAdapter {
+        int binds;
+
+        CountingAdapter(android.content.Context context) {
+            super(context, null, new View(context), AbsListView.CHOICE_MODE_NONE);
+        }
+
+        @Override
+        public void onBindViewHolder(ForecastAdapterViewHolder holder, int position) {
+            binds++;
+            super.onBindViewHolder(holder, position);
+        }
+    }
+
+    /**
+     * Records the notifications an adapter sends, as "type:position:count" strings.
+     */
+    private static class RecordingObserver extends RecyclerView.AdapterDataObserver {
+        final ArrayList<String> events = new ArrayList<>();
+
+        @Override
+        public void onChanged() {
+            events.add("all");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            events.add("change:" + positionStart + ":" + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            events.add("insert:" + positionStart + ":" + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            events.add("remove:" + positionStart + ":" + itemCount);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new CountingAdapter(mContext);
+        mRecyclerView = new RecyclerView(mContext);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+        // Rebind changed rows in place, so that every bind is one we asked for
+        mRecyclerView.setItemAnimator(null);
+        mRecyclerView.setAdapter(mAdapter);
+    }
+
+    public void testResyncRebindsOnlyTheChangedDay() {
+        ForecastRow[] first = rows(0, DAYS, -1);
+        mAdapter.swapCursor(deliver(null, first));
+        layout();
+        assertTrue("Error: No rows were bound on the first load", mAdapter.binds > 0);
+
+        mAdapter.binds = 0;
+        ForecastRow[] second = rows(0, DAYS, 2);
+        mAdapter.swapCursor(deliver(first, second));
+        layout();
+        assertEquals("Error: A resync that changed one day rebound more than that day",
+                1, mAdapter.binds);
+
+        mAdapter.binds = 0;
+        mAdapter.swapCursor(deliver(second, rows(0, DAYS, 2)));
+        layout();
+        assertEquals("Error: A resync with no changes rebound rows", 0, mAdapter.binds);
+    }
+
+    public void testDiffNotifications() {
+        RecordingObserver observer = new RecordingObserver();
+        mAdapter.registerAdapterDataObserver(observer);
+
+        ForecastRow[] first = rows(0, DAYS, -1);
+        mAdapter.swapCursor(deliver(null, first));
+        assertEquals("all", observer.events.get(0));
+
+        // A day passes: today drops off, a new day appears at the end, and the new first row
+        // has to switch to the "today" layout
+        observer.events.clear();
+        ForecastRow[] second = rows(1, DAYS, -1);
+        mAdapter.swapCursor(deliver(first, second));
+        assertEquals("[insert:14:1, change:1:1, remove:0:1]", observer.events.toString());
+
+        // Three days change in the middle
+        observer.events.clear();
+        ForecastRow[] third = rows(1, DAYS, -1);
+        third[4] = rows(5, 1, 5)[0];
+        third[5] = rows(6, 1, 6)[0];
+        third[6] = rows(7, 1, 7)[0];
+        mAdapter.swapCursor(deliver(second, third));
+        assertEquals("[change:4:3]", observer.events.toString());
+
+        // Rows that weren't diffed against what is shown fall back to a full refresh
+        observer.events.clear();
+        mAdapter.swapCursor(deliver(first, rows(0, DAYS, 3)));
+        assertEquals("[all]", observer.events.toString());
+
+        mAdapter.unregisterAdapterDataObserver(observer);
+    }
+
+    public void testStableIds() {
+        ForecastRow[] rows = rows(0, DAYS, -1);
+        mAdapter.swapCursor(deliver(null, rows));
+        assertTrue(mAdapter.hasStableIds());
+        assertEquals("Error: The same day did not keep its id across loads",
+                mAdapter.getItemId(3), rows(0, DAYS, 3)[3].id);
+        for (int i = 1; i < DAYS; i++) {
+            assertTrue(mAdapter.getItemId(i) != mAdapter.getItemId(i - 1));
+        }
+    }
+
+    public void testRowsAreStaleInAnotherLocaleOrDay() {
+        ForecastRow[] rows = rows(0, DAYS, -1);
+        ForecastLoader.ForecastCursor current = deliver(null, rows);
+        assertTrue("Error: Rows formatted just now were stale", current.isCurrent());
+
+        Locale other = Locale.getDefault().equals(Locale.FRENCH) ? Locale.GERMAN : Locale.FRENCH;
+        ForecastLoader.ForecastCursor otherLocale = new ForecastLoader.ForecastCursor(
+                new MatrixCursor(new String[]{"_id"}), rows, null, other, julianDay(0));
+        assertFalse("Error: Rows formatted for another locale were current",
+                otherLocale.isCurrent());
+
+        ForecastLoader.ForecastCursor yesterday = new ForecastLoader.ForecastCursor(
+                new MatrixCursor(new String[]{"_id"}), rows, null, Locale.getDefault(),
+                julianDay(-1));
+        assertFalse("Error: Rows formatted yesterday were current", yesterday.isCurrent());
+    }
+
+    private static int julianDay(int daysFromToday) {
+        long now = System.currentTimeMillis();
+        return Time.getJulianDay(now, TimeZone.getDefault().getOffset(now) / 1000) + daysFromToday;
+    }
+
+    private void layout() {
+        mRecyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, 1080, 1920);
+    }
+
+    private static ForecastLoader.ForecastCursor deliver(ForecastRow[] previous, ForecastRow[] rows) {
+        ForecastDiff diff = previous == null ? null : ForecastDiff.compute(previous, rows);
+        return new ForecastLoader.ForecastCursor(new MatrixCursor(new String[]{"_id"}), rows, diff);
+    }
+
+    /**
+     * Builds {@code count} rows starting {@code firstDay} days from today.  The row for
+     * {@code changedDay}, if any, gets different weather.
+     */
+    private ForecastRow[] rows(int firstDay, int count, int changedDay) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date", "short_desc", "max",
+                "min", "location_setting", "weather_id", "coord_lat", "coord_long",
+                "humidity", "pressure", "wind", "degrees"});
+        for (int day = firstDay; day < firstDay + count; day++) {
+            int weatherId = day == changedDay ? 500 : 800;
+            cursor.addRow(new Object[]{day, TODAY + day * DateUtils.DAY_IN_MILLIS, "Clear",
+                    21.0, 12.0, "99705", weatherId, 64.7488, -147.353,
+                    81.0, 1013.5, 3.6, 270.0});
+        }
+        ForecastRow[] rows = ForecastRow.fromCursor(mContext, cursor);
+        cursor.close();
+        return rows;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import java.util.ArrayList;
+
+public class TestForecastRepository extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final long TODAY = System.currentTimeMillis();
+
+    public void testServesPublishedRows() {
+        ForecastRepository repository = ForecastRepository.getInstance();
+        final ArrayList<String> changes = new ArrayList<>();
+        ForecastRepository.Listener listener = new ForecastRepository.Listener() {
+            @Override
+            public void onForecastChanged(String locationSetting) {
+                changes.add(locationSetting);
+            }
+
+            @Override
+            public void onFeedStopped(String locationSetting) {
+            }
+        };
+        repository.registerListener(listener);
+        try {
+            ForecastRow[] rows = rows(81.0);
+            repository.publish(LOCATION, rows, new ForecastIndex(rows));
+            assertEquals("[" + LOCATION + "]", changes.toString());
+            assertSame(rows[3], repository.getRow(LOCATION, rows[3].date));
+            assertEquals(81.0f, repository.getRow(LOCATION, rows[3].date).humidity);
+            assertNull(repository.getRow(LOCATION, TODAY - DateUtils.DAY_IN_MILLIS));
+            assertNull(repository.getRow("94043", rows[3].date));
+
+            // Only the details changed, which the list doesn't show but the detail view does
+            ForecastRow[] reloaded = rows(60.0);
+            assertTrue(reloaded[3].hasSameContentAs(rows[3]));
+            assertFalse(reloaded[3].hasSameDetailsAs(rows[3]));
+            assertTrue(rows(81.0)[3].hasSameDetailsAs(rows[3]));
+        } finally {
+            repository.unregisterListener(listener);
+        }
+    }
+
+    public void testTracksLiveFeeds() {
+        ForecastRepository repository = ForecastRepository.getInstance();
+        final ArrayList<String> stopped = new ArrayList<>();
+        ForecastRepository.Listener listener = new ForecastRepository.Listener() {
+            @Override
+            public void onForecastChanged(String locationSetting) {
+            }
+
+            @Override
+            public void onFeedStopped(String locationSetting) {
+                stopped.add(locationSetting);
+            }
+        };
+        repository.registerListener(listener);
+        try {
+            assertFalse(repository.hasLiveFeed(LOCATION));
+            repository.onFeedStarted(LOCATION);
+            repository.onFeedStarted(LOCATION);
+            assertTrue(repository.hasLiveFeed(LOCATION));
+            assertFalse(repository.hasLiveFeed("94043"));
+
+            // The location is still fed until its last loader stops
+            repository.onFeedStopped(LOCATION);
+            assertTrue(repository.hasLiveFeed(LOCATION));
+            assertTrue(stopped.isEmpty());
+            repository.onFeedStopped(LOCATION);
+            assertFalse(repository.hasLiveFeed(LOCATION));
+            assertEquals("[" + LOCATION + "]", stopped.toString());
+        } finally {
+            repository.unregisterListener(listener);
+        }
+    }
+
+    private ForecastRow[] rows(double humidity) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date", "short_desc", "max",
+                "min", "location_setting", "weather_id", "coord_lat", "coord_long",
+                "humidity", "pressure", "wind", "degrees"});
+        for (int day = 0; day < 7; day++) {
+            cursor.addRow(new Object[]{day, TODAY + day * DateUtils.DAY_IN_MILLIS, "Clear",
+                    21.0, 12.0, LOCATION, 800, 64.7488, -147.353,
+                    humidity, 1013.5, 3.6, 270.0});
+        }
+        ForecastRow[] rows = ForecastRow.fromCursor(mContext, cursor);
+        cursor.close();
+        return rows;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+public class TestForecastRow extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastRow.class.getSimpleName();
+
+    private static final int ROW_COUNT = 1000;
+    private static final int[] WEATHER_IDS = {200, 301, 500, 511, 601, 741, 800, 801, 804};
+
+    public void testRowsMatchOnTheFlyFormatting() {
+        MatrixCursor cursor = createForecastCursor(14);
+        ForecastRow[] rows = ForecastRow.fromCursor(mContext, cursor);
+        assertEquals(14, rows.length);
+        assertEquals("Error: The cursor was not rewound", -1, cursor.getPosition());
+
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ForecastRow row = rows[i];
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            assertEquals(date, row.date);
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId), row.iconResource);
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId), row.artResource);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, false), row.day);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, i == 0), row.longDay);
+            assertEquals(Utility.getStringForWeatherCondition(mContext, weatherId), row.description);
+            assertEquals(Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP)), row.high);
+            assertEquals(Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP)), row.low);
+            assertEquals(mContext.getString(R.string.a11y_low_temp, row.low), row.lowContentDescription);
+        }
+        cursor.close();
+    }
+
+    public void testPrecomputeCost() {
+        MatrixCursor cursor = createForecastCursor(ROW_COUNT);
+        // Warm up resources and formatters
+        ForecastRow.fromCursor(mContext, cursor);
+
+        long start = System.nanoTime();
+        ForecastRow[] rows = ForecastRow.fromCursor(mContext, cursor);
+        long elapsed = System.nanoTime() - start;
+        assertEquals(ROW_COUNT, rows.length);
+        Log.i(LOG_TAG, "Formatted " + ROW_COUNT + " rows off the main thread in " +
+                elapsed / 1000000 + "ms, " + elapsed / ROW_COUNT / 1000 + "us/row");
+        cursor.close();
+    }
+
+    private static MatrixCursor createForecastCursor(int count) {
+        // Same column order as ForecastFragment's projection
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date", "short_desc", "max",
+                "min", "location_setting", "weather_id", "coord_lat", "coord_long",
+                "humidity", "pressure", "wind", "degrees"});
+        long today = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            int weatherId = WEATHER_IDS[i % WEATHER_IDS.length];
+            cursor.addRow(new Object[]{i, today + i * DateUtils.DAY_IN_MILLIS, "Clear",
+                    20.0 + i % 10, 10.0 - i % 10, "99705", weatherId, 64.7488, -147.353,
+                    81.0, 1013.5, 3.6, 270.0});
+        }
+        return cursor;
+    }
+}
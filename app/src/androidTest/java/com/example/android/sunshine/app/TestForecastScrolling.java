@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.InstrumentationTestRunner;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Flings the forecast list over a long forecast, and reports how long the frames and the list's
+ * own work took.
+ *
+ * The forecast belongs to a location of its own, made the preferred one for the duration of the
+ * test, so the user's data is left alone.  Timings depend on the device, so the budgets are only
+ * enforced when asked for, with {@code -e enforceScrollBudgets true}.
+ */
+public class TestForecastScrolling extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestForecastScrolling.class.getSimpleName();
+
+    private static final int DAYS = 120;
+    private static final int PASSES = 3;
+    private static final long SCROLL_TIMEOUT = 15000;
+
+    private static final String TEST_LOCATION = "sunshine-scrolling-test";
+    private static final String ARG_ENFORCE_BUDGETS = "enforceScrollBudgets";
+
+    // Budgets; a change that goes over one of these made scrolling worse
+    private static final float MAX_SLOW_FRAME_FRACTION = 0.25f;
+    private static final long MAX_BIND_P90_MICROS = 4000;
+    private static final long MAX_CREATE_P90_MICROS = 16000;
+    private static final long MAX_SCROLL_LISTENERS_P90_MICROS = 1000;
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mOriginalLocation;
+
+    public TestForecastScrolling() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Context context = getInstrumentation().getTargetContext();
+        deleteForecast(context);
+        insertForecast(context);
+
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mOriginalLocation = mPrefs.getString(mLocationKey, null);
+        mPrefs.edit().putString(mLocationKey, TEST_LOCATION).commit();
+        // The settings snapshot is updated on the main thread, so wait for it
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return TEST_LOCATION.equals(Utility.getPreferredLocation(context));
+            }
+        }.run();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mOriginalLocation != null) {
+            mPrefs.edit().putString(mLocationKey, mOriginalLocation).commit();
+        } else {
+            mPrefs.edit().remove(mLocationKey).commit();
+        }
+        deleteForecast(getInstrumentation().getTargetContext());
+        super.tearDown();
+    }
+
+    public void testScrollingStaysWithinBudget() throws Throwable {
+        MainActivity activity = getActivity();
+        final RecyclerView recyclerView =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(SCROLL_TIMEOUT) {
+            @Override
+            protected boolean check() {
+                return recyclerView.getAdapter().getItemCount() >= DAYS;
+            }
+        }.run();
+
+        final JankStats stats = JankStats.getInstance();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                stats.reset();
+            }
+        });
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            scrollTo(recyclerView, recyclerView.getAdapter().getItemCount() - 1);
+            scrollTo(recyclerView, 0);
+        }
+
+        StringWriter dump = new StringWriter();
+        stats.dump("", new PrintWriter(dump));
+        Log.i(LOG_TAG, dump.toString());
+
+        JankStats.Histogram frames = stats.getFrames();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            assertTrue("Error: No frames were recorded while scrolling", frames.getCount() > 0);
+        }
+        if (!areBudgetsEnforced()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            assertEquals("Error: Scrolling froze the list", 0,
+                    frames.getCountAbove(JankStats.FROZEN_FRAME_MICROS));
+            float slowFraction = frames.getCountAbove(JankStats.SLOW_FRAME_MICROS) /
+                    (float) frames.getCount();
+            assertTrue("Error: " + Math.round(slowFraction * 100) + "% of the frames were slow",
+                    slowFraction <= MAX_SLOW_FRAME_FRACTION);
+        }
+        assertWithin(stats.getSection(JankStats.SECTION_BIND_VIEW_HOLDER), MAX_BIND_P90_MICROS);
+        assertWithin(stats.getSection(JankStats.SECTION_CREATE_VIEW_HOLDER), MAX_CREATE_P90_MICROS);
+        assertWithin(stats.getSection(JankStats.SECTION_SCROLL_LISTENERS),
+                MAX_SCROLL_LISTENERS_P90_MICROS);
+    }
+
+    private boolean areBudgetsEnforced() {
+        // Runner arguments are only available from Jelly Bean MR2 on
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 ||
+                !(getInstrumentation() instanceof InstrumentationTestRunner)) {
+            return false;
+        }
+        Bundle arguments = ((InstrumentationTestRunner) getInstrumentation()).getArguments();
+        return arguments != null && Boolean.parseBoolean(arguments.getString(ARG_ENFORCE_BUDGETS));
+    }
+
+    private static void assertWithin(JankStats.Histogram section, long p90Micros) {
+        assertTrue("Error: 90th percentile of " + section.getPercentile(90) + "us is over " +
+                p90Micros + "us", section.getPercentile(90) <= p90Micros);
+    }
+
+    private void scrollTo(final RecyclerView recyclerView, final int position) throws Throwable {
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recyclerView.smoothScrollToPosition(position);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        new PollingCheck(SCROLL_TIMEOUT) {
+            @Override
+            protected boolean check() {
+                return recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+            }
+        }.run();
+    }
+
+    /**
+     * Fills the test location with enough days to scroll through.
+     */
+    private void insertForecast(Context context) {
+        ContentResolver resolver = context.getContentResolver();
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        long locationId = ContentUris.parseId(
+                resolver.insert(WeatherContract.LocationEntry.CONTENT_URI, location));
+
+        long firstDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int[] weatherIds = {800, 801, 500, 600, 200, 741, 803, 300};
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    firstDate + day * DateUtils.DAY_IN_MILLIS);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 270.0);
+            values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 80.0);
+            values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1013.0);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20 + day % 7);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 10 - day % 5);
+            values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, LOG_TAG);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherIds[day % weatherIds.length]);
+            days[day] = values;
+        }
+        resolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, days);
+    }
+
+    /**
+     * Deletes the test location and its forecast, and nothing else.
+     */
+    private static void deleteForecast(Context context) {
+        ContentResolver resolver = context.getContentResolver();
+        resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " IN (SELECT " +
+                        WeatherContract.LocationEntry._ID + " FROM " +
+                        WeatherContract.LocationEntry.TABLE_NAME + " WHERE " +
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?)",
+                new String[]{TEST_LOCATION});
+        resolver.delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TEST_LOCATION});
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class TestFriendlyDateFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestFriendlyDateFormatter.class.getSimpleName();
+
+    private static final int CALLS = 10000;
+    private static final int ROUNDS = 5;
+    // Days of a typical forecast list, from yesterday to two weeks out
+    private static final int FIRST_DAY = -1;
+    private static final int LAST_DAY = 14;
+
+    @Override
+    protected void tearDown() throws Exception {
+        FriendlyDateFormatter.getInstance(mContext).invalidate();
+        super.tearDown();
+    }
+
+    public void testMatchesLegacyFormatting() {
+        long now = System.currentTimeMillis();
+        for (int day = FIRST_DAY; day <= LAST_DAY; day++) {
+            long date = now + day * DateUtils.DAY_IN_MILLIS;
+            // Twice, so that the second round is answered from the cache
+            for (int round = 0; round < 2; round++) {
+                assertEquals(legacyFriendlyDayString(mContext, date, true),
+                        Utility.getFriendlyDayString(mContext, date, true));
+                assertEquals(legacyFriendlyDayString(mContext, date, false),
+                        Utility.getFriendlyDayString(mContext, date, false));
+                assertEquals(legacyDayName(mContext, date), Utility.getDayName(mContext, date));
+                assertEquals(legacyFormattedMonthDay(date),
+                        Utility.getFormattedMonthDay(mContext, date));
+            }
+        }
+    }
+
+    public void testLocaleChangeInvalidates() {
+        Locale original = Locale.getDefault();
+        long nextWeek = System.currentTimeMillis() + 5 * DateUtils.DAY_IN_MILLIS;
+        try {
+            Locale.setDefault(Locale.US);
+            String english = Utility.getDayName(mContext, nextWeek);
+            Locale.setDefault(Locale.FRANCE);
+            String french = Utility.getDayName(mContext, nextWeek);
+            assertEquals(new SimpleDateFormat("EEEE", Locale.FRANCE).format(nextWeek), french);
+            assertFalse("Error: A cached label survived a locale change", english.equals(french));
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    public void testBenchmark() {
+        long now = System.currentTimeMillis();
+        int days = LAST_DAY - FIRST_DAY + 1;
+        long[] dates = new long[days];
+        for (int i = 0; i < days; i++) {
+            dates[i] = now + (FIRST_DAY + i) * DateUtils.DAY_IN_MILLIS;
+        }
+
+        long[] cached = new long[ROUNDS];
+        long[] legacy = new long[ROUNDS];
+        int cachedAllocs = 0;
+        int legacyAllocs = 0;
+        // Warm up both paths before measuring
+        runCached(dates);
+        runLegacy(dates);
+        Debug.startAllocCounting();
+        for (int round = 0; round < ROUNDS; round++) {
+            Debug.resetThreadAllocCount();
+            long start = System.nanoTime();
+            runCached(dates);
+            cached[round] = System.nanoTime() - start;
+            cachedAllocs = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            start = System.nanoTime();
+            runLegacy(dates);
+            legacy[round] = System.nanoTime() - start;
+            legacyAllocs = Debug.getThreadAllocCount();
+        }
+        Debug.stopAllocCounting();
+
+        Arrays.sort(cached);
+        Arrays.sort(legacy);
+        Log.i(LOG_TAG, "Cached: " + cached[ROUNDS / 2] / CALLS + "ns/call, " +
+                cachedAllocs / (float) CALLS + " allocs/call");
+        Log.i(LOG_TAG, "Legacy: " + legacy[ROUNDS / 2] / CALLS + "ns/call, " +
+                legacyAllocs / (float) CALLS + " allocs/call");
+        assertTrue("Error: The cached formatter was slower than building formatters per call",
+                cached[ROUNDS / 2] < legacy[ROUNDS / 2]);
+    }
+
+    private void runCached(long[] dates) {
+        for (int i = 0; i < CALLS; i++) {
+            Utility.getFriendlyDayString(mContext, dates[i % dates.length], i % dates.length == 1);
+        }
+    }
+
+    private void runLegacy(long[] dates) {
+        for (int i = 0; i < CALLS; i++) {
+            legacyFriendlyDayString(mContext, dates[i % dates.length], i % dates.length == 1);
+        }
+    }
+
+    // The per-call implementation that FriendlyDateFormatter replaced
+
+    private static String legacyFriendlyDayString(Context context, long dateInMillis,
+                                                  boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return context.getString(R.string.format_full_friendly_date,
+                    context.getString(R.string.today), legacyFormattedMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return legacyDayName(context, dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+
+    private static String legacyDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        }
+    }
+
+    private static String legacyFormattedMonthDay(long dateInMillis) {
+        return new SimpleDateFormat("MMMM dd").format(dateInMillis);
+    }
+}
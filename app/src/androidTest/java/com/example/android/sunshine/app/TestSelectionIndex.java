@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.AbsListView;
+
+public class TestSelectionIndex extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSelectionIndex.class.getSimpleName();
+
+    private static final int ROWS = 10000;
+    private static final long TODAY = System.currentTimeMillis();
+
+    private ForecastAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_SINGLE);
+    }
+
+    public void testSelectionFollowsItsRowAcrossLongLists() {
+        ForecastRow[] first = rows(0, ROWS);
+        mAdapter.swapCursor(cursor(first));
+
+        ItemChoiceManager icm = new ItemChoiceManager(mAdapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        icm.mCheckStates.put(9000, true);
+        icm.mCheckedIdStates.put(first[9000].id, 9000);
+
+        // The selected day moves 5000 rows up, much further than a nearby search would look
+        mAdapter.swapCursor(cursor(rows(5000, ROWS)));
+        long start = System.nanoTime();
+        icm.onDataSetChanged();
+        long elapsed = System.nanoTime() - start;
+        assertEquals("Error: The selection did not follow its row",
+                4000, icm.getSelectedItemPosition());
+        Log.i(LOG_TAG, "Restored the selection in " + elapsed / 1000 + "us over " + ROWS + " rows");
+
+        // The selected day is gone
+        mAdapter.swapCursor(cursor(rows(9001, ROWS)));
+        icm.onDataSetChanged();
+        assertEquals("Error: A selection whose row was removed was kept",
+                RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+    }
+
+    public void testPositionForDate() {
+        ForecastRow[] rows = rows(0, ROWS);
+        mAdapter.swapCursor(cursor(rows));
+
+        long start = System.nanoTime();
+        for (int position = 0; position < ROWS; position++) {
+            assertEquals(position, mAdapter.getPositionForDate(rows[position].date));
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.i(LOG_TAG, "Date lookups: " + elapsed / ROWS + "ns each over " + ROWS + " rows");
+
+        assertEquals(RecyclerView.NO_POSITION,
+                mAdapter.getPositionForDate(TODAY - DateUtils.DAY_IN_MILLIS));
+        mAdapter.swapCursor(null);
+        assertEquals(RecyclerView.NO_POSITION, mAdapter.getPositionForDate(rows[0].date));
+    }
+
+    private static ForecastLoader.ForecastCursor cursor(ForecastRow[] rows) {
+        return new ForecastLoader.ForecastCursor(new MatrixCursor(new String[]{"_id"}), rows, null);
+    }
+
+    /**
+     * Builds {@code count} rows starting {@code firstDay} days from today.
+     */
+    private ForecastRow[] rows(int firstDay, int count) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date", "short_desc", "max",
+                "min", "location_setting", "weather_id", "coord_lat", "coord_long",
+                "humidity", "pressure", "wind", "degrees"}, count);
+        for (int day = firstDay; day < firstDay + count; day++) {
+            cursor.addRow(new Object[]{day, TODAY + day * DateUtils.DAY_IN_MILLIS, "Clear",
+                    21.0, 12.0, "99705", 800, 64.7488, -147.353,
+                    81.0, 1013.5, 3.6, 270.0});
+        }
+        ForecastRow[] rows = ForecastRow.fromCursor(mContext, cursor);
+        cursor.close();
+        return rows;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Locale;
+
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSettingsSnapshot.class.getSimpleName();
+
+    private static final int BINDS = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mOriginalUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mOriginalUnits = mPrefs.getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mUnitsKey, mOriginalUnits).commit();
+        super.tearDown();
+    }
+
+    public void testSnapshotFollowsPreferences() {
+        assertEquals(legacyIsMetric(mContext), Utility.isMetric(mContext));
+        assertEquals(legacyArtUrl(mContext, 500), Utility.getArtUrlForWeatherCondition(mContext, 500));
+        assertNull(Utility.getArtUrlForWeatherCondition(mContext, 950));
+
+        // The listener is called on the main thread, so wait for it
+        final boolean metric = Utility.isMetric(mContext);
+        mPrefs.edit().putString(mUnitsKey, metric ?
+                mContext.getString(R.string.pref_units_imperial) :
+                mContext.getString(R.string.pref_units_metric)).commit();
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return Utility.isMetric(mContext) != metric;
+            }
+        }.run();
+        assertEquals(legacyIsMetric(mContext), Utility.isMetric(mContext));
+    }
+
+    public void testBindPathBenchmark() {
+        // What formatting one forecast row reads from the settings: the units for both
+        // temperatures, and which art to show
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BINDS; i++) {
+            if (legacyIsMetric(mContext)) sink++;
+            if (legacyIsMetric(mContext)) sink++;
+            if (legacyUsingLocalGraphics(mContext)) sink++;
+            sink += legacyArtUrl(mContext, 800).length();
+        }
+        long legacy = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BINDS; i++) {
+            if (Utility.isMetric(mContext)) sink++;
+            if (Utility.isMetric(mContext)) sink++;
+            if (Utility.usingLocalGraphics(mContext)) sink++;
+            sink += Utility.getArtUrlForWeatherCondition(mContext, 800).length();
+        }
+        long snapshot = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "Settings reads per bind: SharedPreferences " + legacy / BINDS +
+                "ns, snapshot " + snapshot / BINDS + "ns (" + sink + ")");
+        assertTrue("Error: The snapshot was slower than reading the preferences", snapshot < legacy);
+    }
+
+    // The per-call preference reads that SettingsSnapshot replaced
+
+    private static boolean legacyIsMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    private static boolean legacyUsingLocalGraphics(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack).equals(sunshineArtPack);
+    }
+
+    private static String legacyArtUrl(Context context, int weatherId) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+        return String.format(Locale.US, formatArtUrl,
+                weatherId == 800 ? "clear" : "rain");
+    }
+}
@@ -29,6 +29,8 @@ public class TestDb extends AndroidTestCase {
     // Since we want each test to start with a clean slate
     void deleteTheDatabase() {
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        // A snapshot left behind by a real sync would otherwise be restored into the new database
+        WeatherSnapshot.getSnapshotFile(mContext).delete();
     }
 
     /*
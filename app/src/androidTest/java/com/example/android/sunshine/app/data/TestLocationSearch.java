@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+public class TestLocationSearch extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLocationSearch.class.getSimpleName();
+
+    private static final int CITY_COUNT = 50000;
+    private static final int QUERY_COUNT = 1000;
+
+    private static final String[] SYLLABLES = {
+            "an", "ber", "ca", "dor", "el", "fa", "gor", "ha", "is", "jo", "ka", "lon",
+            "mar", "nor", "o", "pa", "qui", "ro", "san", "ta", "u", "ver", "wa", "york", "zu"
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteLocations();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteLocations();
+        super.tearDown();
+    }
+
+    public void testPrefixSearchIsRanked() {
+        insertCity("London", "London, UK");
+        insertCity("New London", "06320");
+        insertCity("Londonderry", "BT48");
+        insertCity("Paris", "75001");
+
+        Cursor cursor = search("lon");
+        assertEquals(3, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: The shortest city name starting with the query should rank first",
+                "London", cityName(cursor));
+        cursor.moveToNext();
+        assertEquals("Londonderry", cityName(cursor));
+        cursor.moveToNext();
+        assertEquals("Error: Matches inside the name should rank after prefix matches",
+                "New London", cityName(cursor));
+        cursor.close();
+
+        cursor = search("7500");
+        assertTrue("Error: The location setting was not searched", cursor.moveToFirst());
+        assertEquals("Paris", cityName(cursor));
+        cursor.close();
+
+        cursor = search("new lon");
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        cursor = search("\"*)");
+        assertEquals("Error: Punctuation should not reach the FTS query", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testIndexFollowsWrites() {
+        long id = insertCity("Springfield", "65801");
+
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Shelbyville");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(id)});
+
+        Cursor cursor = search("spring");
+        assertEquals("Error: An updated city is still found by its old name", 0, cursor.getCount());
+        cursor.close();
+        cursor = search("shelby");
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(id)});
+        cursor = search("shelby");
+        assertEquals("Error: A deleted city is still found", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testBulkLoadAndQueryLatency() {
+        Random random = new Random(7);
+        ContentValues[] cities = new ContentValues[CITY_COUNT];
+        for (int i = 0; i < CITY_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(LocationEntry.COLUMN_CITY_NAME, randomCityName(random));
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, String.format(Locale.US, "%05d", i));
+            values.put(LocationEntry.COLUMN_COORD_LAT, random.nextDouble() * 180 - 90);
+            values.put(LocationEntry.COLUMN_COORD_LONG, random.nextDouble() * 360 - 180);
+            cities[i] = values;
+        }
+
+        long start = System.nanoTime();
+        int inserted = mContext.getContentResolver().bulkInsert(LocationEntry.CONTENT_URI, cities);
+        long loadMillis = (System.nanoTime() - start) / 1000000;
+        assertEquals(CITY_COUNT, inserted);
+
+        long[] latencies = new long[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            String name = cities[random.nextInt(CITY_COUNT)].getAsString(LocationEntry.COLUMN_CITY_NAME);
+            String prefix = name.substring(0, 2 + random.nextInt(Math.max(1, name.length() - 2)));
+            start = System.nanoTime();
+            Cursor cursor = search(prefix);
+            assertTrue("Error: No match for the prefix " + prefix, cursor.moveToFirst());
+            latencies[i] = System.nanoTime() - start;
+            cursor.close();
+        }
+
+        Arrays.sort(latencies);
+        Log.i(LOG_TAG, "Loaded " + CITY_COUNT + " cities in " + loadMillis + "ms; prefix search p50 " +
+                latencies[QUERY_COUNT / 2] / 1000 + "us, p99 " +
+                latencies[QUERY_COUNT * 99 / 100] / 1000 + "us");
+    }
+
+    private static String randomCityName(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    private Cursor search(String query) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri(query), null, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    private static String cityName(Cursor cursor) {
+        return cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_CITY_NAME));
+    }
+
+    private long insertCity(String cityName, String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 0.0);
+        values.put(LocationEntry.COLUMN_COORD_LONG, 0.0);
+        return Long.parseLong(mContext.getContentResolver()
+                .insert(LocationEntry.CONTENT_URI, values).getLastPathSegment());
+    }
+
+    private void deleteLocations() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
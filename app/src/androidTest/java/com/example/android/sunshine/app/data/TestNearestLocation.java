@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestNearestLocation extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNearestLocation.class.getSimpleName();
+
+    private static final int LOCATION_COUNT = 100000;
+    private static final int QUERY_COUNT = 1000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteLocations();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteLocations();
+        super.tearDown();
+    }
+
+    public void testNearestWithinRadius() {
+        insertLocations(new double[][] {
+                {64.7488, -147.353},
+                {64.7520, -147.353},   // ~360m north
+                {64.8000, -147.353},   // ~5.7km north
+        });
+
+        Cursor cursor = queryNearest(64.7490, -147.353, 1000);
+        assertTrue("Error: No location found inside the radius", cursor.moveToFirst());
+        assertEquals("loc-0", cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        cursor = queryNearest(64.7515, -147.353, 1000);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("loc-1", cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+
+        cursor = queryNearest(64.7700, -147.353, 1000);
+        assertEquals("Error: A location outside the radius was returned", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testNearestAcrossAntimeridian() {
+        insertLocations(new double[][] {
+                {-16.5, 179.999},
+        });
+
+        Cursor cursor = queryNearest(-16.5, -179.999, 1000);
+        assertEquals("Error: The bounding box did not wrap around the antimeridian",
+                1, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testDistance() {
+        // One degree of latitude is a little over 111km everywhere
+        double distance = WeatherProvider.distanceMeters(10, 20, 11, 20);
+        assertTrue("Unexpected distance " + distance, distance > 111000 && distance < 111400);
+        assertEquals(0.0, WeatherProvider.distanceMeters(45, 45, 45, 45), 1e-6);
+    }
+
+    public void testNearestLookupLatency() {
+        Random random = new Random(42);
+        double[][] coords = new double[LOCATION_COUNT][2];
+        for (int i = 0; i < LOCATION_COUNT; i++) {
+            // Roughly the populated latitudes
+            coords[i][0] = random.nextDouble() * 120 - 60;
+            coords[i][1] = random.nextDouble() * 360 - 180;
+        }
+        insertLocations(coords);
+
+        long[] latencies = new long[QUERY_COUNT];
+        int found = 0;
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            double[] target = coords[random.nextInt(LOCATION_COUNT)];
+            long start = System.nanoTime();
+            Cursor cursor = queryNearest(target[0] + 0.001, target[1], 1000);
+            if (cursor.moveToFirst()) found++;
+            cursor.close();
+            latencies[i] = System.nanoTime() - start;
+        }
+        assertEquals("Error: A location next to the query point was not found", QUERY_COUNT, found);
+
+        Arrays.sort(latencies);
+        Log.i(LOG_TAG, "Nearest lookup over " + LOCATION_COUNT + " locations: p50 " +
+                latencies[QUERY_COUNT / 2] / 1000 + "us, p99 " +
+                latencies[QUERY_COUNT * 99 / 100] / 1000 + "us");
+    }
+
+    private Cursor queryNearest(double lat, double lon, double radius) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(lat, lon, radius), null, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    private void insertLocations(double[][] coords) {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + LocationEntry.TABLE_NAME +
+                " (" + LocationEntry.COLUMN_LOCATION_SETTING + "," + LocationEntry.COLUMN_CITY_NAME +
+                "," + LocationEntry.COLUMN_COORD_LAT + "," + LocationEntry.COLUMN_COORD_LONG +
+                ") VALUES (?,?,?,?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < coords.length; i++) {
+                insert.bindString(1, "loc-" + i);
+                insert.bindString(2, "City " + i);
+                insert.bindDouble(3, coords[i][0]);
+                insert.bindDouble(4, coords[i][1]);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+            db.close();
+        }
+    }
+
+    private void deleteLocations() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
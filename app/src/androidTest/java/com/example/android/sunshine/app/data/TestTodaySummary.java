@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+public class TestTodaySummary extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestTodaySummary.class.getSimpleName();
+
+    private static final int ITERATIONS = 500;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testSummaryMatchesCursor() {
+        assertNull("Error: A summary was returned before there was any weather",
+                TodaySummary.load(mContext, TestUtilities.TEST_LOCATION));
+
+        insertToday(75, 65, 321);
+
+        TodaySummary fast = TodaySummary.load(mContext, TestUtilities.TEST_LOCATION);
+        TodaySummary slow = TodaySummary.loadFromCursor(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull(fast);
+        assertNotNull(slow);
+        assertEquals(slow.date, fast.date);
+        assertEquals(slow.weatherId, fast.weatherId);
+        assertEquals(slow.high, fast.high);
+        assertEquals(slow.low, fast.low);
+        assertEquals(slow.description, fast.description);
+    }
+
+    public void testWritesInvalidateSummary() {
+        insertToday(75, 65, 321);
+        assertEquals(75.0, TodaySummary.load(mContext, TestUtilities.TEST_LOCATION).high);
+
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationId)});
+        assertEquals("Error: The summary was not refreshed after an update",
+                80.0, TodaySummary.load(mContext, TestUtilities.TEST_LOCATION).high);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertNull("Error: The summary was not dropped after a delete",
+                TodaySummary.load(mContext, TestUtilities.TEST_LOCATION));
+    }
+
+    public void testCallLatencyAgainstCursor() {
+        insertToday(75, 65, 321);
+        // Warm up both paths, including the provider's cache
+        TodaySummary.load(mContext, TestUtilities.TEST_LOCATION);
+        TodaySummary.loadFromCursor(mContext, TestUtilities.TEST_LOCATION);
+
+        long[] call = new long[ITERATIONS];
+        long[] cursor = new long[ITERATIONS];
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            TodaySummary.load(mContext, TestUtilities.TEST_LOCATION);
+            call[i] = System.nanoTime() - start;
+        }
+        int callAllocs = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            TodaySummary.loadFromCursor(mContext, TestUtilities.TEST_LOCATION);
+            cursor[i] = System.nanoTime() - start;
+        }
+        int cursorAllocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        Arrays.sort(call);
+        Arrays.sort(cursor);
+        Log.i(LOG_TAG, "call(): p50 " + call[ITERATIONS / 2] / 1000 + "us, p99 " +
+                call[ITERATIONS * 99 / 100] / 1000 + "us, " + callAllocs / ITERATIONS + " allocs/call");
+        Log.i(LOG_TAG, "query(): p50 " + cursor[ITERATIONS / 2] / 1000 + "us, p99 " +
+                cursor[ITERATIONS * 99 / 100] / 1000 + "us, " + cursorAllocs / ITERATIONS + " allocs/call");
+    }
+
+    private void insertToday(double high, double low, int weatherId) {
+        ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+        values.put(WeatherEntry.COLUMN_DATE, System.currentTimeMillis());
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, low);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -36,6 +36,10 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/location/nearest?lat=..&lon=..&radius=..
+    // content://com.example.android.sunshine.app/location/search/Lon
+    private static final Uri TEST_LOCATION_SEARCH = WeatherContract.LocationEntry.buildLocationSearchUri("Lon");
+    private static final Uri TEST_LOCATION_NEAREST = WeatherContract.LocationEntry.buildNearestLocationUri(64.7488, -147.353, 1000);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +57,9 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEAREST URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAREST), WeatherProvider.LOCATION_NEAREST);
+        assertEquals("Error: The LOCATION SEARCH URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_SEARCH), WeatherProvider.LOCATION_SEARCH);
     }
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class TestWeatherSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherSnapshot.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private SQLiteDatabase mDb;
+    private File mSnapshot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherSnapshot.getSnapshotFile(mContext).delete();
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+        mSnapshot = new File(mContext.getCacheDir(), "test_weather.snapshot");
+        mSnapshot.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        mSnapshot.delete();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws IOException {
+        fillDatabase(2, 7);
+
+        Cursor before = mDb.query(WeatherEntry.TABLE_NAME, null, null, null, null, null,
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE);
+        // Cursors are filled lazily, so force the rows to be read before the tables are cleared
+        assertEquals(14, before.getCount());
+        assertEquals(16, WeatherSnapshot.export(mDb, mSnapshot));
+
+        clear();
+        assertEquals(16, WeatherSnapshot.restore(mDb, mSnapshot));
+
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, LocationEntry.TABLE_NAME));
+        Cursor after = mDb.query(WeatherEntry.TABLE_NAME, null, null, null, null, null,
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE);
+        assertEquals(before.getCount(), after.getCount());
+        while (before.moveToNext()) {
+            assertTrue(after.moveToNext());
+            for (String column : new String[] {
+                    WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE,
+                    WeatherEntry.COLUMN_SHORT_DESC, WeatherEntry.COLUMN_WEATHER_ID,
+                    WeatherEntry.COLUMN_MIN_TEMP, WeatherEntry.COLUMN_MAX_TEMP,
+                    WeatherEntry.COLUMN_HUMIDITY, WeatherEntry.COLUMN_PRESSURE,
+                    WeatherEntry.COLUMN_WIND_SPEED, WeatherEntry.COLUMN_DEGREES}) {
+                assertEquals("Column " + column + " did not survive the snapshot",
+                        before.getString(before.getColumnIndex(column)),
+                        after.getString(after.getColumnIndex(column)));
+            }
+        }
+        before.close();
+        after.close();
+    }
+
+    public void testCorruptSnapshotIsRejected() throws IOException {
+        fillDatabase(1, 14);
+        WeatherSnapshot.export(mDb, mSnapshot);
+
+        // Flip one byte in the middle of the row data
+        RandomAccessFile raf = new RandomAccessFile(mSnapshot, "rw");
+        long offset = raf.length() / 2;
+        raf.seek(offset);
+        int b = raf.read();
+        raf.seek(offset);
+        raf.write(b ^ 0xff);
+        raf.close();
+
+        try {
+            WeatherSnapshot.restore(mDb, mSnapshot);
+            fail("Error: a corrupt snapshot was restored");
+        } catch (IOException expected) {
+        }
+        assertEquals("Error: a rejected snapshot left rows behind",
+                0, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, LocationEntry.TABLE_NAME));
+    }
+
+    public void testTruncatedSnapshotIsRejected() throws IOException {
+        fillDatabase(1, 14);
+        WeatherSnapshot.export(mDb, mSnapshot);
+
+        RandomAccessFile raf = new RandomAccessFile(mSnapshot, "rw");
+        raf.setLength(raf.length() - 20);
+        raf.close();
+
+        try {
+            WeatherSnapshot.restore(mDb, mSnapshot);
+            fail("Error: a truncated snapshot was restored");
+        } catch (IOException expected) {
+        }
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+    }
+
+    public void testSnapshotTiming10k() throws IOException {
+        timeSnapshot(10, 1000);
+    }
+
+    @LargeTest
+    public void testSnapshotTiming1M() throws IOException {
+        timeSnapshot(1000, 1000);
+    }
+
+    private void timeSnapshot(int locations, int days) throws IOException {
+        fillDatabase(locations, days);
+        int expectedRows = locations + locations * days;
+
+        long start = System.nanoTime();
+        assertEquals(expectedRows, WeatherSnapshot.export(mDb, mSnapshot));
+        long exportMillis = (System.nanoTime() - start) / 1000000;
+
+        clear();
+
+        start = System.nanoTime();
+        assertEquals(expectedRows, WeatherSnapshot.restore(mDb, mSnapshot));
+        long restoreMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(locations * days, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+        Log.i(LOG_TAG, expectedRows + " rows, " + mSnapshot.length() + " bytes: export " +
+                exportMillis + "ms, restore " + restoreMillis + "ms");
+    }
+
+    private void fillDatabase(int locations, int days) {
+        SQLiteStatement location = mDb.compileStatement("INSERT INTO " + LocationEntry.TABLE_NAME +
+                " (" + LocationEntry._ID + "," + LocationEntry.COLUMN_LOCATION_SETTING + "," +
+                LocationEntry.COLUMN_CITY_NAME + "," + LocationEntry.COLUMN_COORD_LAT + "," +
+                LocationEntry.COLUMN_COORD_LONG + ") VALUES (?,?,?,?,?)");
+        SQLiteStatement weather = mDb.compileStatement("INSERT INTO " + WeatherEntry.TABLE_NAME +
+                " (" + WeatherEntry.COLUMN_LOC_KEY + "," + WeatherEntry.COLUMN_DATE + "," +
+                WeatherEntry.COLUMN_SHORT_DESC + "," + WeatherEntry.COLUMN_WEATHER_ID + "," +
+                WeatherEntry.COLUMN_MIN_TEMP + "," + WeatherEntry.COLUMN_MAX_TEMP + "," +
+                WeatherEntry.COLUMN_HUMIDITY + "," + WeatherEntry.COLUMN_PRESSURE + "," +
+                WeatherEntry.COLUMN_WIND_SPEED + "," + WeatherEntry.COLUMN_DEGREES +
+                ") VALUES (?,?,?,?,?,?,?,?,?,?)");
+        mDb.beginTransaction();
+        try {
+            for (int l = 1; l <= locations; l++) {
+                location.bindLong(1, l);
+                location.bindString(2, TestUtilities.TEST_LOCATION + "-" + l);
+                location.bindString(3, "North Pole " + l);
+                location.bindDouble(4, 64.7488 + l / 1000.0);
+                location.bindDouble(5, -147.353 - l / 1000.0);
+                location.executeInsert();
+                for (int d = 0; d < days; d++) {
+                    weather.bindLong(1, l);
+                    weather.bindLong(2, TestUtilities.TEST_DATE + d * DAY_IN_MILLIS);
+                    weather.bindString(3, "Asteroids");
+                    weather.bindLong(4, 321);
+                    weather.bindDouble(5, 65 - d % 10);
+                    weather.bindDouble(6, 75 + d % 10);
+                    weather.bindDouble(7, 1.2);
+                    weather.bindDouble(8, 1.3);
+                    weather.bindDouble(9, 5.5);
+                    weather.bindDouble(10, d % 360);
+                    weather.executeInsert();
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            location.close();
+            weather.close();
+        }
+    }
+
+    private void clear() {
+        mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+        mDb.delete(LocationEntry.TABLE_NAME, null, null);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public class TestWeatherWriter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherWriter.class.getSimpleName();
+
+    private static final int SMALL_WRITES = 20;
+
+    private WeatherDbHelper mDbHelper;
+    private WeatherWriter mWriter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherSnapshot.getSnapshotFile(mContext).delete();
+        mDbHelper = new WeatherDbHelper(mContext);
+        mWriter = new WeatherWriter(mDbHelper);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testQueuedWritesShareATransaction() throws Exception {
+        CountDownLatch release = blockWriter();
+        ArrayList<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < SMALL_WRITES; i++) {
+            futures.add(mWriter.submit(insertLocation("loc" + i)));
+        }
+        assertEquals(SMALL_WRITES, mWriter.getMetrics().getInt(WeatherContract.EXTRA_QUEUE_DEPTH));
+        release.countDown();
+
+        for (Future<Long> future : futures) {
+            assertTrue("Error: A queued insert failed", future.get() > 0);
+        }
+        assertEquals(SMALL_WRITES, countLocations());
+
+        Bundle metrics = mWriter.getMetrics();
+        Log.i(LOG_TAG, "Writer metrics: " + metrics);
+        assertEquals(SMALL_WRITES + 1, metrics.getLong(WeatherContract.EXTRA_BATCH_COUNT));
+        assertEquals("Error: The queued writes were not merged into one transaction",
+                2, metrics.getLong(WeatherContract.EXTRA_TRANSACTION_COUNT));
+        assertTrue(metrics.getInt(WeatherContract.EXTRA_MAX_QUEUE_DEPTH) >= SMALL_WRITES);
+        assertEquals(0, metrics.getInt(WeatherContract.EXTRA_QUEUE_DEPTH));
+    }
+
+    public void testFailedBatchDoesNotFailItsNeighbours() throws Exception {
+        CountDownLatch release = blockWriter();
+        Future<Long> before = mWriter.submit(insertLocation("before"));
+        Future<Long> failing = mWriter.submit(new WeatherWriter.Batch<Long>() {
+            @Override
+            public Long apply(SQLiteDatabase db) {
+                db.insert(LocationEntry.TABLE_NAME, null, createLocation("failing"));
+                throw new IllegalStateException("Deliberate failure");
+            }
+        });
+        Future<Long> after = mWriter.submit(insertLocation("after"));
+        release.countDown();
+
+        assertTrue(before.get() > 0);
+        assertTrue(after.get() > 0);
+        try {
+            failing.get();
+            fail("Error: The failing batch reported success");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("Error: The failing batch was not rolled back on its own",
+                2, countLocations());
+
+        try {
+            mWriter.execute(new WeatherWriter.Batch<Void>() {
+                @Override
+                public Void apply(SQLiteDatabase db) {
+                    throw new IllegalArgumentException("Deliberate failure");
+                }
+            });
+            fail("Error: execute() swallowed the batch's exception");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testNestedBatchRunsInline() {
+        long id = mWriter.execute(new WeatherWriter.Batch<Long>() {
+            @Override
+            public Long apply(SQLiteDatabase db) {
+                // Waiting for the writer from the writer itself must not deadlock
+                return mWriter.execute(insertLocation("nested"));
+            }
+        });
+        assertTrue(id > 0);
+        assertEquals(1, countLocations());
+    }
+
+    /**
+     * Occupies the writer thread until the returned latch is released, so that the batches
+     * submitted in the meantime queue up behind it.
+     */
+    private CountDownLatch blockWriter() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mWriter.submit(new WeatherWriter.Batch<Void>() {
+            @Override
+            public Void apply(SQLiteDatabase db) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        started.await();
+        return release;
+    }
+
+    private static WeatherWriter.Batch<Long> insertLocation(final String setting) {
+        return new WeatherWriter.Batch<Long>() {
+            @Override
+            public Long apply(SQLiteDatabase db) {
+                return db.insert(LocationEntry.TABLE_NAME, null, createLocation(setting));
+            }
+        };
+    }
+
+    private static ContentValues createLocation(String setting) {
+        ContentValues values = TestUtilities.createNorthPoleLocationValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        return values;
+    }
+
+    private long countLocations() {
+        return DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(),
+                LocationEntry.TABLE_NAME);
+    }
+}
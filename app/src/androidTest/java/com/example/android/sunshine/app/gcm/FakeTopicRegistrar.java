@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Stands in for the GCM topic endpoint: keeps the subscriptions of one token in memory, counts
+ * the calls made, and fails on demand.
+ */
+class FakeTopicRegistrar implements TopicRegistrar {
+    final Set<String> topics = new HashSet<>();
+    String token;
+    int calls;
+    // Calls to let through before failing, or -1 to never fail
+    int failAfter = -1;
+
+    @Override
+    public void subscribe(String token, String topic) throws IOException {
+        call(token);
+        topics.add(topic);
+    }
+
+    @Override
+    public void unsubscribe(String token, String topic) throws IOException {
+        call(token);
+        topics.remove(topic);
+    }
+
+    private void call(String token) throws IOException {
+        if (failAfter == 0) {
+            throw new IOException("SERVICE_NOT_AVAILABLE");
+        }
+        if (failAfter > 0) failAfter--;
+        if (!token.equals(this.token)) {
+            // A new token has none of the old one's subscriptions
+            this.token = token;
+            topics.clear();
+        }
+        calls++;
+    }
+}
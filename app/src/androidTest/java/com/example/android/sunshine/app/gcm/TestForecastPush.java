@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class TestForecastPush extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+    private static final long TODAY = 1419033600000L;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long LAST_SYNC = TODAY + 1000;
+    // By the push server's clock, which needn't agree with the device's
+    private static final long LAST_PUSH_ISSUED = TODAY - 60 * 60 * 1000;
+
+    private long mLocationId;
+    private RecordingCallbacks mCallbacks;
+
+    /**
+     * Records what a push asked for, instead of syncing from the network or telling the widgets.
+     */
+    private static class RecordingCallbacks implements ForecastPush.Callbacks {
+        int syncRequests;
+        int dataChanges;
+
+        @Override
+        public void requestSync(Context context, String locationSetting) {
+            assertEquals(TEST_LOCATION, locationSetting);
+            syncRequests++;
+        }
+
+        @Override
+        public void dataChanged(Context context, String locationSetting, long firstDate,
+                                long lastDate) {
+            assertEquals(TEST_LOCATION, locationSetting);
+            dataChanges++;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCallbacks = new RecordingCallbacks();
+        deleteAll();
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        location.put(LocationEntry.COLUMN_LAST_SYNC, LAST_SYNC);
+        location.put(LocationEntry.COLUMN_LAST_PUSH_ISSUED, LAST_PUSH_ISSUED);
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, location));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testPushedDaysAreWritten() throws JSONException {
+        assertTrue("Error: A push on top of our last one wasn't applied",
+                apply(createForecast(LAST_PUSH_ISSUED + 1000, LAST_PUSH_ISSUED, 500, 501)));
+        assertEquals(2, countDays());
+        assertEquals(LAST_PUSH_ISSUED + 1000, getLong(LocationEntry.COLUMN_LAST_PUSH_ISSUED));
+        assertEquals("Error: A push changed the device time of the last sync",
+                LAST_SYNC, getLong(LocationEntry.COLUMN_LAST_SYNC));
+
+        // A second push replaces the days it repeats
+        assertTrue(apply(createForecast(LAST_PUSH_ISSUED + 2000, LAST_PUSH_ISSUED, 800)));
+        assertEquals(2, countDays());
+        assertEquals(800, getTodayWeatherId());
+        assertEquals(2, mCallbacks.dataChanges);
+        assertEquals(0, mCallbacks.syncRequests);
+    }
+
+    public void testStalePushIsNotApplied() throws JSONException {
+        assertFalse("Error: A push needing a newer forecast than ours was applied",
+                apply(createForecast(LAST_PUSH_ISSUED + 1000, LAST_PUSH_ISSUED + 1, 500)));
+        assertEquals(0, countDays());
+        assertEquals("Error: A stale push didn't request a sync", 1, mCallbacks.syncRequests);
+        assertEquals(0, mCallbacks.dataChanges);
+    }
+
+    public void testOlderPushIsNotApplied() throws JSONException {
+        assertTrue(apply(createForecast(LAST_PUSH_ISSUED + 2000, LAST_PUSH_ISSUED, 800)));
+
+        // A push issued before the one above, delivered after it
+        assertFalse("Error: A push older than our data was applied",
+                apply(createForecast(LAST_PUSH_ISSUED + 1000, LAST_PUSH_ISSUED, 500)));
+        assertEquals(800, getTodayWeatherId());
+        assertEquals("Error: An older push moved the last push back",
+                LAST_PUSH_ISSUED + 2000, getLong(LocationEntry.COLUMN_LAST_PUSH_ISSUED));
+
+        // Nor one issued at the same time as our data
+        assertFalse(apply(createForecast(LAST_PUSH_ISSUED + 2000, LAST_PUSH_ISSUED, 500)));
+        assertEquals(800, getTodayWeatherId());
+        // Our data is newer already, so there is nothing to sync either
+        assertEquals(1, mCallbacks.dataChanges);
+        assertEquals(0, mCallbacks.syncRequests);
+    }
+
+    public void testPushIgnoresTheDeviceClock() throws JSONException {
+        // A device clock far ahead of the server's must not make valid pushes look old
+        setLong(LocationEntry.COLUMN_LAST_SYNC, LAST_PUSH_ISSUED + 365 * DAY_IN_MILLIS);
+        assertTrue(apply(createForecast(LAST_PUSH_ISSUED + 1000, LAST_PUSH_ISSUED, 500)));
+
+        // Nor one far behind make a push on top of an older forecast look current
+        setLong(LocationEntry.COLUMN_LAST_SYNC, 1);
+        assertFalse(apply(createForecast(LAST_PUSH_ISSUED + 3000, LAST_PUSH_ISSUED + 2000, 800)));
+        assertEquals(500, getTodayWeatherId());
+        assertEquals(1, mCallbacks.syncRequests);
+    }
+
+    public void testPushAfterNetworkSyncIsApplied() throws JSONException {
+        // A network sync clears the last push, since its forecast replaced the pushed days
+        setLong(LocationEntry.COLUMN_LAST_PUSH_ISSUED, 0);
+        assertTrue(apply(createForecast(LAST_PUSH_ISSUED + 1000, LAST_PUSH_ISSUED + 500, 500)));
+        assertEquals(LAST_PUSH_ISSUED + 1000, getLong(LocationEntry.COLUMN_LAST_PUSH_ISSUED));
+        assertEquals(0, mCallbacks.syncRequests);
+    }
+
+    public void testUnsyncedLocationIsSynced() throws JSONException {
+        setLong(LocationEntry.COLUMN_LAST_SYNC, 0);
+        setLong(LocationEntry.COLUMN_LAST_PUSH_ISSUED, 0);
+        assertFalse(apply(createForecast(LAST_PUSH_ISSUED + 1000, LAST_PUSH_ISSUED, 500)));
+        assertEquals(0, countDays());
+        assertEquals(1, mCallbacks.syncRequests);
+    }
+
+    private boolean apply(JSONObject forecast) {
+        return ForecastPush.apply(mContext, TEST_LOCATION, forecast, mCallbacks);
+    }
+
+    private JSONObject createForecast(long issued, long base, int... weatherIds)
+            throws JSONException {
+        JSONArray days = new JSONArray();
+        for (int i = 0; i < weatherIds.length; i++) {
+            days.put(new JSONObject()
+                    .put("date", TODAY + i * DAY_IN_MILLIS)
+                    .put("weather_id", weatherIds[i])
+                    .put("desc", "Weather " + weatherIds[i])
+                    .put("max", 12.5)
+                    .put("min", 7.1)
+                    .put("humidity", 80)
+                    .put("pressure", 1010.2)
+                    .put("wind", 4.1)
+                    .put("deg", 210));
+        }
+        return new JSONObject()
+                .put("issued", issued)
+                .put("base", base)
+                .put("days", days);
+    }
+
+    private int getTodayWeatherId() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TEST_LOCATION, TODAY),
+                new String[] {WeatherEntry.COLUMN_WEATHER_ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long getLong(String column) {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[] {column},
+                LocationEntry._ID + " = ?", new String[] {Long.toString(mLocationId)}, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void setLong(String column, long value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value);
+        assertEquals(1, mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry._ID + " = ?", new String[] {Long.toString(mLocationId)}));
+    }
+
+    private int countDays() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[] {Long.toString(mLocationId)},
+                null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestTopicSubscriptionManager extends AndroidTestCase {
+
+    private static final String TOKEN = "token-1";
+    private static final String[] LOCATIONS = {"94043", "London, UK", "Zürich*"};
+
+    private FakeTopicRegistrar mRegistrar;
+    private TopicSubscriptionManager mManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mContext.getSharedPreferences("gcm_topics", 0).edit().clear().commit();
+        mRegistrar = new FakeTopicRegistrar();
+        mManager = new TopicSubscriptionManager(mContext, mRegistrar);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        mContext.getSharedPreferences("gcm_topics", 0).edit().clear().commit();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testTopicsFollowLocationTable() {
+        for (String location : LOCATIONS) {
+            insertLocation(location, System.currentTimeMillis());
+        }
+        insertLocation("99705", System.currentTimeMillis() -
+                TopicSubscriptionManager.STALE_AFTER_MILLIS - 1000);
+
+        assertNull(mManager.getToken());
+        assertTrue(mManager.update(TOKEN));
+        assertEquals("Error: The token of the update wasn't kept", TOKEN, mManager.getToken());
+        assertEquals("Error: Expected one topic per recently synced location",
+                LOCATIONS.length, mRegistrar.topics.size());
+        for (String location : LOCATIONS) {
+            String topic = TopicSubscriptionManager.getTopic(location);
+            assertTrue(topic.matches("/topics/[a-zA-Z0-9_.~%-]+"));
+            assertTrue(mRegistrar.topics.contains(topic));
+        }
+        assertEquals(mRegistrar.topics, mManager.getSubscribedTopics());
+
+        // Nothing changed, so nothing is sent
+        int calls = mRegistrar.calls;
+        assertTrue(mManager.update(TOKEN));
+        assertEquals(calls, mRegistrar.calls);
+
+        // A removed location is unsubscribed from
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[] {LOCATIONS[0]});
+        assertTrue(mManager.update(TOKEN));
+        assertFalse(mRegistrar.topics.contains(TopicSubscriptionManager.getTopic(LOCATIONS[0])));
+        assertEquals(calls + 1, mRegistrar.calls);
+
+        // A new token subscribes again from scratch
+        assertTrue(mManager.update("token-2"));
+        assertEquals("token-2", mManager.getToken());
+        assertEquals(LOCATIONS.length - 1, mRegistrar.topics.size());
+    }
+
+    public void testFailuresBackOffAndKeepProgress() {
+        for (String location : LOCATIONS) {
+            insertLocation(location, System.currentTimeMillis());
+        }
+
+        mRegistrar.failAfter = 1;
+        assertFalse(mManager.update(TOKEN));
+        assertEquals(TopicSubscriptionManager.MIN_BACKOFF_MILLIS, mManager.getBackoffMillis());
+        assertEquals("Error: The subscription made before the failure wasn't kept",
+                1, mManager.getSubscribedTopics().size());
+
+        mRegistrar.failAfter = 0;
+        assertFalse(mManager.update(TOKEN));
+        assertEquals(2 * TopicSubscriptionManager.MIN_BACKOFF_MILLIS, mManager.getBackoffMillis());
+        for (int i = 0; i < 20; i++) {
+            mManager.update(TOKEN);
+        }
+        assertEquals(TopicSubscriptionManager.MAX_BACKOFF_MILLIS, mManager.getBackoffMillis());
+
+        // Success finishes the rest without repeating the first, and resets the backoff
+        mRegistrar.failAfter = -1;
+        int calls = mRegistrar.calls;
+        assertTrue(mManager.update(TOKEN));
+        assertEquals(LOCATIONS.length - 1, mRegistrar.calls - calls);
+        assertEquals(LOCATIONS.length, mRegistrar.topics.size());
+        assertEquals(0, mManager.getBackoffMillis());
+    }
+
+    private void insertLocation(String locationSetting, long lastSync) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, locationSetting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        values.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        values.put(LocationEntry.COLUMN_LAST_SYNC, lastSync);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.example.android.sunshine.app.widget.DetailWidgetProvider;
+import com.example.android.sunshine.app.widget.TodayWidgetIntentService;
+import com.example.android.sunshine.app.widget.TodayWidgetProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TestDataUpdateDispatcher extends AndroidTestCase {
+
+    private static final long WINDOW_MILLIS = 300;
+    private static final long MAX_WAIT = WINDOW_MILLIS * 10;
+    private static final int SYNCS = 10;
+    private static final long TODAY = 1419033600000L;
+    // Widgets that don't exist, so that they follow the preferred location
+    private static final int[] WIDGET_IDS = {Integer.MAX_VALUE};
+
+    private CountingContext mCountingContext;
+
+    /**
+     * Records the broadcasts and service starts of the dispatcher and the consumers, instead of
+     * reaching the real widgets and Muzei.
+     */
+    private static class CountingContext extends ContextWrapper {
+        final ArrayList<Intent> broadcasts = new ArrayList<>();
+        final ArrayList<Intent> serviceStarts = new ArrayList<>();
+
+        CountingContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public void sendBroadcast(Intent intent) {
+            synchronized (broadcasts) {
+                broadcasts.add(intent);
+            }
+        }
+
+        @Override
+        public ComponentName startService(Intent service) {
+            synchronized (serviceStarts) {
+                serviceStarts.add(service);
+            }
+            return service.getComponent();
+        }
+
+        int countServiceStarts(Class<?> service) {
+            int count = 0;
+            synchronized (serviceStarts) {
+                for (Intent intent : serviceStarts) {
+                    if (intent.getComponent() != null &&
+                            service.getName().equals(intent.getComponent().getClassName())) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCountingContext = new CountingContext(mContext);
+    }
+
+    public void testRapidSyncsDispatchOnce() throws InterruptedException {
+        DataUpdateDispatcher dispatcher = new DataUpdateDispatcher(mCountingContext, WINDOW_MILLIS);
+        for (int sync = 0; sync < SYNCS; sync++) {
+            String location = sync % 2 == 0 ? "99705" : "94043";
+            dispatcher.dataChanged(location, TODAY + sync * DateUtils.DAY_IN_MILLIS,
+                    TODAY + (sync + 13) * DateUtils.DAY_IN_MILLIS);
+        }
+        waitForDispatch();
+
+        synchronized (mCountingContext.broadcasts) {
+            assertEquals("Error: Rapid syncs were not coalesced into one update",
+                    1, mCountingContext.broadcasts.size());
+            Intent update = mCountingContext.broadcasts.get(0);
+            assertEquals(SunshineSyncAdapter.ACTION_DATA_UPDATED, update.getAction());
+            assertEquals("[99705, 94043]", Arrays.toString(
+                    update.getStringArrayExtra(DataUpdateDispatcher.EXTRA_LOCATIONS)));
+            assertEquals(TODAY, update.getLongExtra(DataUpdateDispatcher.EXTRA_FIRST_DATE, 0));
+            assertEquals(TODAY + (SYNCS + 12) * DateUtils.DAY_IN_MILLIS,
+                    update.getLongExtra(DataUpdateDispatcher.EXTRA_LAST_DATE, 0));
+
+            assertTrue(DataUpdateDispatcher.affects(update, "94043", TODAY));
+            assertFalse("Error: An update for other locations was not skipped",
+                    DataUpdateDispatcher.affects(update, "10001", TODAY));
+            assertFalse("Error: An update for past days was not skipped",
+                    DataUpdateDispatcher.affects(update, "99705",
+                            TODAY + (SYNCS + 13) * DateUtils.DAY_IN_MILLIS));
+        }
+    }
+
+    public void testRapidSyncsRefreshEachConsumerOnce() throws InterruptedException {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        String location = Utility.getPreferredLocation(mContext);
+        DataUpdateDispatcher dispatcher = new DataUpdateDispatcher(mCountingContext, WINDOW_MILLIS);
+        for (int sync = 0; sync < SYNCS; sync++) {
+            dispatcher.dataChanged(location, today, today + 13 * DateUtils.DAY_IN_MILLIS);
+        }
+        waitForDispatch();
+
+        // Muzei is started by the dispatcher itself
+        int muzeiStarts = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? 1 : 0;
+        assertEquals("Error: Muzei was not refreshed exactly once",
+                muzeiStarts, mCountingContext.countServiceStarts(WeatherMuzeiSource.class));
+
+        // The widgets hear of the update through the broadcast
+        Intent update;
+        synchronized (mCountingContext.broadcasts) {
+            assertEquals(1, mCountingContext.broadcasts.size());
+            update = mCountingContext.broadcasts.get(0);
+        }
+        assertTrue(TodayWidgetProvider.onDataUpdated(mCountingContext, update, WIDGET_IDS));
+        assertEquals("Error: The today widget was not refreshed exactly once",
+                1, mCountingContext.countServiceStarts(TodayWidgetIntentService.class));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            assertTrue("Error: The detail widget was not told its data changed",
+                    DetailWidgetProvider.onDataUpdated(mCountingContext, update,
+                            AppWidgetManager.getInstance(mContext), WIDGET_IDS));
+        }
+    }
+
+    public void testUpdatesWithoutSummaryAffectEveryone() {
+        Intent legacy = new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED);
+        assertTrue(DataUpdateDispatcher.affects(legacy, "99705", TODAY));
+    }
+
+    /**
+     * Waits for the first update, then long enough for a second one to arrive.
+     */
+    private void waitForDispatch() throws InterruptedException {
+        new PollingCheck(MAX_WAIT) {
+            @Override
+            protected boolean check() {
+                synchronized (mCountingContext.broadcasts) {
+                    return !mCountingContext.broadcasts.isEmpty();
+                }
+            }
+        }.run();
+        // Give a second update every chance to arrive
+        Thread.sleep(WINDOW_MILLIS * 3);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+public class TestLargeIconCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLargeIconCache.class.getSimpleName();
+
+    private static final int ICON_SIZE = 128;
+
+    public void testStoredIconsAreReadBack() {
+        LargeIconCache cache = new LargeIconCache(mContext);
+        String key = LargeIconCache.getKey("http://example.com/art/clear.png", ICON_SIZE, ICON_SIZE);
+        cache.put(key, Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888));
+
+        long start = System.nanoTime();
+        Bitmap icon = cache.get(key);
+        Log.i(LOG_TAG, "Cached large icon read in " + (System.nanoTime() - start) / 1000 + "us");
+        assertNotNull("Error: The stored icon wasn't found", icon);
+        assertEquals(ICON_SIZE, icon.getWidth());
+        assertEquals(ICON_SIZE, icon.getHeight());
+
+        assertNull(cache.get(LargeIconCache.getKey("http://example.com/art/clear.png",
+                ICON_SIZE / 2, ICON_SIZE / 2)));
+    }
+
+    public void testArtWithTheSameHashCodeGetsItsOwnIcon() {
+        // "Aa" and "BB" have the same String.hashCode()
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        String first = LargeIconCache.getKey("Aa", ICON_SIZE, ICON_SIZE);
+        String second = LargeIconCache.getKey("BB", ICON_SIZE, ICON_SIZE);
+        assertFalse("Error: Different art shares a cached icon", first.equals(second));
+
+        LargeIconCache cache = new LargeIconCache(mContext);
+        cache.put(first, Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888));
+        assertTrue(cache.contains(first));
+        assertFalse(cache.contains(second));
+    }
+
+    public void testLeastRecentlyUsedIconsAreEvicted() throws InterruptedException {
+        LargeIconCache cache = new LargeIconCache(mContext);
+        Bitmap bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        String first = LargeIconCache.getKey("first", 1, 1);
+        cache.put(first, bitmap);
+        for (int i = 0; i < LargeIconCache.MAX_ICONS; i++) {
+            // File times may only have a resolution of a second
+            if (i == 0) Thread.sleep(1000);
+            cache.put(LargeIconCache.getKey("art " + i, 1, 1), bitmap);
+        }
+        assertNull("Error: The oldest icon wasn't evicted", cache.get(first));
+        assertNotNull(cache.get(LargeIconCache.getKey("art " + (LargeIconCache.MAX_ICONS - 1), 1, 1)));
+    }
+}
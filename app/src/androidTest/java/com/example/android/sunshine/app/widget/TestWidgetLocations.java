@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+public class TestWidgetLocations extends AndroidTestCase {
+
+    private static final int[] WIDGET_IDS = {90001, 90002, 90003, 90004, 90005, 90006};
+    private static final String LONDON = "London, UK";
+    private static final String OSLO = "Oslo, NO";
+
+    @Override
+    protected void tearDown() throws Exception {
+        WidgetLocations.remove(mContext, WIDGET_IDS);
+        super.tearDown();
+    }
+
+    public void testWidgetsAreGroupedByLocation() {
+        WidgetLocations.set(mContext, WIDGET_IDS[0], LONDON);
+        WidgetLocations.set(mContext, WIDGET_IDS[1], OSLO);
+        WidgetLocations.set(mContext, WIDGET_IDS[2], LONDON);
+        WidgetLocations.set(mContext, WIDGET_IDS[3], OSLO);
+        WidgetLocations.set(mContext, WIDGET_IDS[4], LONDON);
+        // The last one follows the settings
+
+        LinkedHashMap<String, ArrayList<Integer>> groups =
+                WidgetLocations.groupByLocation(mContext, WIDGET_IDS);
+        assertEquals("Error: Expected one group per distinct location", 3, groups.size());
+        assertEquals(Arrays.asList(WIDGET_IDS[0], WIDGET_IDS[2], WIDGET_IDS[4]), groups.get(LONDON));
+        assertEquals(Arrays.asList(WIDGET_IDS[1], WIDGET_IDS[3]), groups.get(OSLO));
+        assertEquals(Arrays.asList(WIDGET_IDS[5]),
+                groups.get(Utility.getPreferredLocation(mContext)));
+
+        assertTrue(WidgetLocations.getConfiguredLocations(mContext).contains(LONDON));
+        assertTrue(WidgetLocations.getConfiguredLocations(mContext).contains(OSLO));
+
+        WidgetLocations.remove(mContext, new int[] {WIDGET_IDS[1], WIDGET_IDS[3]});
+        assertEquals(Utility.getPreferredLocation(mContext),
+                WidgetLocations.get(mContext, WIDGET_IDS[1]));
+    }
+
+    public void testWidgetsOfOneLocationShareOneQuery() {
+        WidgetForecastCache.invalidate();
+        WidgetForecastCache.Day[] first = WidgetForecastCache.get(mContext, LONDON);
+        assertSame("Error: A second widget of the same location queried again",
+                first, WidgetForecastCache.get(mContext, LONDON));
+
+        WidgetForecastCache.invalidate();
+        assertNotSame("Error: A change of data didn't query again",
+                first, WidgetForecastCache.get(mContext, LONDON));
+    }
+}
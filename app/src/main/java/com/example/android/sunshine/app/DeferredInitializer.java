@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Holds back work that the first frame doesn't need until the activity has drawn it.
+ *
+ * Each task is posted as its own message once the first draw pass is over, so that input and
+ * the next frames can be handled between them.
+ */
+public class DeferredInitializer implements ViewTreeObserver.OnPreDrawListener {
+
+    private final View mDecorView;
+    private final Runnable[] mTasks;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private DeferredInitializer(View decorView, Runnable[] tasks) {
+        mDecorView = decorView;
+        mTasks = tasks;
+    }
+
+    /**
+     * Runs {@code tasks} on the main thread, in order, after {@code activity} draws its first frame.
+     */
+    public static void runAfterFirstDraw(Activity activity, Runnable... tasks) {
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new DeferredInitializer(decorView, tasks));
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        mDecorView.getViewTreeObserver().removeOnPreDrawListener(this);
+        StartupTrace.mark("first draw");
+        // Posted now, these run once the frame being drawn is done
+        for (Runnable task : mTasks) {
+            mHandler.post(task);
+        }
+        return true;
+    }
+}
@@ -34,6 +34,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -44,7 +45,8 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+        ForecastRepository.Listener {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -55,6 +57,8 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The list's row being shown, or null if the details came from this fragment's own query
+    private ForecastRow mShownRow;
 
     private static final int DETAIL_LOADER = 0;
 
@@ -153,10 +157,25 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        // The list has usually loaded this day already, in which case it is shown right away.
+        // This fragment only queries for itself when no started list keeps the day up to date.
+        ForecastRow row = findListRow();
+        if ( null != row ) {
+            showRow(row);
+        }
+        if ( null == row || !hasLiveListFeed() ) {
+            getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        }
+        ForecastRepository.getInstance().registerListener(this);
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onDestroyView() {
+        ForecastRepository.getInstance().unregisterListener(this);
+        super.onDestroyView();
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -164,10 +183,76 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
-            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            ForecastRow row = findListRow();
+            if ( null != row ) {
+                showRow(row);
+            } else {
+                mShownRow = null;
+            }
+            if ( null != row && hasLiveListFeed() ) {
+                getLoaderManager().destroyLoader(DETAIL_LOADER);
+            } else {
+                getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            }
         }
     }
 
+    @Override
+    public void onForecastChanged(String locationSetting) {
+        // Only follow the list if that is where the shown details came from; otherwise this
+        // fragment's own loader is watching for changes
+        if ( null == mShownRow || !locationSetting.equals(mShownRow.locationSetting) ) return;
+        ForecastRow row = findListRow();
+        if ( null != row && !row.hasSameDetailsAs(mShownRow) ) {
+            showRow(row);
+        }
+    }
+
+    @Override
+    public void onFeedStopped(String locationSetting) {
+        // The list no longer watches the shown day, as when its activity is stopped behind
+        // DetailActivity, so this fragment takes over.  When both are stopped together, the
+        // list feeds the day again once they start.
+        if ( !isResumed() ) return;
+        if ( null == mShownRow || !locationSetting.equals(mShownRow.locationSetting) ) return;
+        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+    }
+
+    private boolean hasLiveListFeed() {
+        return ForecastRepository.getInstance().hasLiveFeed(
+                WeatherEntry.getLocationSettingFromUri(mUri));
+    }
+
+    private ForecastRow findListRow() {
+        if ( null == mUri ) return null;
+        return ForecastRepository.getInstance().getRow(
+                WeatherEntry.getLocationSettingFromUri(mUri), WeatherEntry.getDateFromUri(mUri));
+    }
+
+    private void showRow(ForecastRow row) {
+        mShownRow = row;
+        bindForecast(row.weatherId, row.date, row.maxTemp, row.minTemp, row.humidity,
+                row.pressure, row.windSpeed, row.degrees);
+        finishBinding();
+        reportDrawn(true);
+    }
+
+    /**
+     * Logs the click-to-detail latency once the bound views are about to be drawn.
+     */
+    private void reportDrawn(final boolean fromMemory) {
+        final View rootView = getView();
+        if ( null == rootView ) return;
+        rootView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                rootView.getViewTreeObserver().removeOnPreDrawListener(this);
+                ForecastRepository.getInstance().onDetailDrawn(fromMemory);
+                return true;
+            }
+        });
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         if ( null != mUri ) {
@@ -191,79 +276,94 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        // Nothing to redraw if the first render from the list already showed this
+        if ( null != mShownRow && data != null && data.moveToFirst() && isShownRow(data) ) {
+            return;
+        }
+        mShownRow = null;
         if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
-
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+            bindForecast(data.getInt(COL_WEATHER_CONDITION_ID),
+                    data.getLong(COL_WEATHER_DATE),
+                    data.getDouble(COL_WEATHER_MAX_TEMP),
+                    data.getDouble(COL_WEATHER_MIN_TEMP),
+                    data.getFloat(COL_WEATHER_HUMIDITY),
+                    data.getFloat(COL_WEATHER_PRESSURE),
+                    data.getFloat(COL_WEATHER_WIND_SPEED),
+                    data.getFloat(COL_WEATHER_DEGREES));
+        }
+        finishBinding();
+        reportDrawn(false);
+    }
 
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
-            }
+    private boolean isShownRow(Cursor data) {
+        return data.getInt(COL_WEATHER_CONDITION_ID) == mShownRow.weatherId &&
+                data.getLong(COL_WEATHER_DATE) == mShownRow.date &&
+                data.getDouble(COL_WEATHER_MAX_TEMP) == mShownRow.maxTemp &&
+                data.getDouble(COL_WEATHER_MIN_TEMP) == mShownRow.minTemp &&
+                data.getFloat(COL_WEATHER_HUMIDITY) == mShownRow.humidity &&
+                data.getFloat(COL_WEATHER_PRESSURE) == mShownRow.pressure &&
+                data.getFloat(COL_WEATHER_WIND_SPEED) == mShownRow.windSpeed &&
+                data.getFloat(COL_WEATHER_DEGREES) == mShownRow.degrees;
+    }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    private void bindForecast(int weatherId, long date, double high, double low, float humidity,
+                              float pressure, float windSpeedStr, float windDirStr) {
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
 
+        if ( Utility.usingLocalGraphics(getActivity()) ) {
+            mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+        } else {
+            // Use weather art image
+            Glide.with(this)
+                    .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                    .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                    .crossFade()
+                    .into(mIconView);
         }
+
+        // Update views for day of week and date
+        String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
+        mDateView.setText(dateText);
+
+        // Get description from weather condition ID
+        String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
+        mDescriptionView.setText(description);
+        mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
+
+        String highString = Utility.formatTemperature(getActivity(), high);
+        mHighTempView.setText(highString);
+        mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+
+        String lowString = Utility.formatTemperature(getActivity(), low);
+        mLowTempView.setText(lowString);
+        mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+
+        mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
+        mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
+        mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
+
+        mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
+        mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
+        mWindLabelView.setContentDescription(mWindView.getContentDescription());
+
+        mPressureView.setText(getString(R.string.format_pressure, pressure));
+        mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
+        mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    }
+
+    private void finishBinding() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
@@ -30,13 +30,13 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.PositionLookup {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -45,10 +45,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private ForecastRow[] mRows;
+    private ForecastIndex mIndex = ForecastIndex.EMPTY;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    private ForecastArtPreloader mArtPreloader;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +76,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows[adapterPosition].date, this);
             mICM.onClick(this);
         }
     }
@@ -90,6 +91,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        setHasStableIds(true);
     }
 
     /*
@@ -103,6 +105,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     @Override
     public ForecastAdapterViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
         if ( viewGroup instanceof RecyclerView ) {
+            long start = JankStats.startSection();
             int layoutId = -1;
             switch (viewType) {
                 case VIEW_TYPE_TODAY: {
@@ -116,7 +119,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
             }
             View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
             view.setFocusable(true);
-            return new ForecastAdapterViewHolder(view);
+            ForecastAdapterViewHolder holder = new ForecastAdapterViewHolder(view);
+            JankStats.getInstance().endSection(JankStats.SECTION_CREATE_VIEW_HOLDER, start);
+            return holder;
         } else {
             throw new RuntimeException("Not bound to RecyclerView");
         }
@@ -124,65 +129,56 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        long start = JankStats.startSection();
+        // Everything shown here was formatted by the loader, off the main thread
+        ForecastRow row = mRows[position];
         int defaultImage;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                defaultImage = row.artResource;
                 useLongToday = true;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                defaultImage = row.iconResource;
                 useLongToday = false;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == row.artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(row.artUrl)
                     .error(defaultImage)
+                    .listener(null == mArtPreloader ? null : mArtPreloader.newBindListener())
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        // the animator can use this to re-find the original view.  The name follows the row's
+        // stable id, since inserts and removals move holders without binding them again
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView,
+                "iconView" + getItemId(position));
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        forecastAdapterViewHolder.mDateView.setText(useLongToday ? row.longDay : row.day);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionContentDescription);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highContentDescription);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowContentDescription);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        JankStats.getInstance().endSection(JankStats.SECTION_BIND_VIEW_HOLDER, start);
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -197,6 +193,21 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mUseTodayLayout = useTodayLayout;
     }
 
+    /**
+     * Sets the preloader that collects the load statistics of the art bound by this adapter.
+     */
+    public void setArtPreloader(ForecastArtPreloader artPreloader) {
+        mArtPreloader = artPreloader;
+    }
+
+    /**
+     * Returns the formatted row at {@code position}, or null if there is none.
+     */
+    public ForecastRow getRow(int position) {
+        if ( null == mRows || position < 0 || position >= mRows.length ) return null;
+        return mRows[position];
+    }
+
     public int getSelectedItemPosition() {
         return mICM.getSelectedItemPosition();
     }
@@ -206,15 +217,55 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mRows[position].id;
+    }
+
+    @Override
+    public int getPositionForId(long id) {
+        return mIndex.getPositionForId(id);
+    }
+
+    /**
+     * Returns the position of the row for {@code date}, or RecyclerView.NO_POSITION.
+     */
+    public int getPositionForDate(long date) {
+        return mIndex.getPositionForDate(date);
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mRows ) return 0;
+        return mRows.length;
     }
 
     public void swapCursor(Cursor newCursor) {
+        ForecastRow[] oldRows = mRows;
+        ForecastDiff diff = null;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if ( null == newCursor ) {
+            mRows = null;
+            mIndex = ForecastIndex.EMPTY;
+        } else if ( newCursor instanceof ForecastLoader.ForecastCursor ) {
+            mRows = ((ForecastLoader.ForecastCursor) newCursor).getRows();
+            mIndex = ((ForecastLoader.ForecastCursor) newCursor).getIndex();
+            diff = ((ForecastLoader.ForecastCursor) newCursor).getDiff();
+        } else {
+            // Not from a ForecastLoader, so the formatting has to happen here
+            mRows = ForecastRow.fromCursor(mContext, newCursor);
+            mIndex = new ForecastIndex(mRows);
+        }
+        // Find the checked rows before they are rebound
+        mICM.onDataSetChanged();
+
+        // The loader diffed against the rows it delivered last.  Those are normally the rows
+        // shown, but fall back to a full refresh if anything else was swapped in since.
+        if ( null != diff && diff.oldRows == oldRows ) {
+            diff.dispatchTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Locale;
+
+/**
+ * Loads the art of the rows about to scroll into view before they are bound, so that a fast
+ * scroll over a cold cache finds the images in memory instead of showing placeholders.
+ *
+ * Rows are preloaded in the direction of the scroll, at the size of the list icon, with the
+ * same transformation the list uses, so that the bind finds them under the same cache key.
+ * It also keeps count of how many bound rows found their art in memory, and how long the rest
+ * waited for it.
+ */
+public class ForecastArtPreloader extends RecyclerView.OnScrollListener {
+    private static final String LOG_TAG = ForecastArtPreloader.class.getSimpleName();
+
+    private final Context mContext;
+    private final ForecastAdapter mAdapter;
+    private final int mPreloadAhead;
+    private final int mIconSize;
+
+    // Reused in turn, so that at most mPreloadAhead preloads hold on to their images
+    private final PreloadTarget[] mTargets;
+    private int mNextTarget;
+
+    // The positions preloaded last, so that a scroll within them doesn't preload them again
+    private int mPreloadedStart = -1;
+    private int mPreloadedEnd = -1;
+
+    // Statistics of the art loads started by binds
+    private int mLoads;
+    private int mMemoryHits;
+    private int mFailures;
+    private long mTotalLoadMillis;
+    private long mMaxLoadMillis;
+
+    private static class PreloadTarget extends SimpleTarget<GlideDrawable> {
+        PreloadTarget(int size) {
+            super(size, size);
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Nothing to show; the point was to get it into the caches
+        }
+    }
+
+    public ForecastArtPreloader(Context context, ForecastAdapter adapter, int preloadAhead) {
+        mContext = context;
+        mAdapter = adapter;
+        mPreloadAhead = preloadAhead;
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        mTargets = new PreloadTarget[preloadAhead];
+        for (int i = 0; i < preloadAhead; i++) {
+            mTargets[i] = new PreloadTarget(mIconSize);
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+
+        int start;
+        int end;
+        if (dy > 0) {
+            start = layoutManager.findLastVisibleItemPosition() + 1;
+            end = Math.min(start + mPreloadAhead, mAdapter.getItemCount());
+        } else {
+            end = layoutManager.findFirstVisibleItemPosition();
+            start = Math.max(0, end - mPreloadAhead);
+        }
+        if (start < 0 || start >= end) return;
+
+        // Only the positions that weren't already covered by the previous preload
+        for (int position = start; position < end; position++) {
+            if (position >= mPreloadedStart && position < mPreloadedEnd) continue;
+            preload(mAdapter.getRow(position));
+        }
+        mPreloadedStart = start;
+        mPreloadedEnd = end;
+    }
+
+    private void preload(ForecastRow row) {
+        if (row == null || row.artUrl == null) return;
+        PreloadTarget target = mTargets[mNextTarget];
+        mNextTarget = (mNextTarget + 1) % mTargets.length;
+        Glide.with(mContext)
+                .load(row.artUrl)
+                .fitCenter()
+                .into(target);
+    }
+
+    /**
+     * Returns a listener for the art load of one bound row, which adds it to the statistics.
+     */
+    public RequestListener<String, GlideDrawable> newBindListener() {
+        final long start = SystemClock.elapsedRealtime();
+        return new RequestListener<String, GlideDrawable>() {
+            @Override
+            public boolean onException(Exception e, String model, Target<GlideDrawable> target,
+                                       boolean isFirstResource) {
+                mFailures++;
+                return false;
+            }
+
+            @Override
+            public boolean onResourceReady(GlideDrawable resource, String model,
+                                           Target<GlideDrawable> target,
+                                           boolean isFromMemoryCache, boolean isFirstResource) {
+                long elapsed = SystemClock.elapsedRealtime() - start;
+                mLoads++;
+                if (isFromMemoryCache) mMemoryHits++;
+                mTotalLoadMillis += elapsed;
+                mMaxLoadMillis = Math.max(mMaxLoadMillis, elapsed);
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Logs the hit rate and time-to-image of the art loaded since the last call, and resets them.
+     */
+    public void logStats() {
+        if (mLoads + mFailures == 0) return;
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "Art loads: %d, memory hit rate %.0f%%, failures %d, time to image avg %dms max %dms",
+                mLoads, mLoads == 0 ? 0f : 100f * mMemoryHits / mLoads, mFailures,
+                mLoads == 0 ? 0 : mTotalLoadMillis / mLoads, mMaxLoadMillis));
+        mLoads = 0;
+        mMemoryHits = 0;
+        mFailures = 0;
+        mTotalLoadMillis = 0;
+        mMaxLoadMillis = 0;
+    }
+
+    /**
+     * Fetches the art of every condition in an art pack into the disk cache, and into memory at
+     * the list icon size.  There are only a few images per pack, so after a change of pack the
+     * list never has to wait on the network.  Must be called on the main thread.
+     *
+     * @param artPackFormat the art pack preference value, a URL format taking the condition name
+     */
+    public static void warmArtPack(Context context, String artPackFormat) {
+        Context appContext = context.getApplicationContext();
+        int iconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            String url = String.format(Locale.US, artPackFormat,
+                    WeatherConditions.getConditionSlug(condition));
+            Glide.with(appContext)
+                    .load(url)
+                    .fitCenter()
+                    .into(new PreloadTarget(iconSize));
+            // The original as well, which every other size is decoded from
+            Glide.with(appContext)
+                    .load(url)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL);
+        }
+    }
+}
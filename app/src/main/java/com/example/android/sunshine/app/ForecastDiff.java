@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * The item notifications that turn one list of {@link ForecastRow}s into another.
+ *
+ * Both lists are in ascending date order for a single location, which is how the forecast
+ * loader queries them, so rows are matched up with a single merge pass on their
+ * (location, date) identity.  Rows can't change places in a list ordered by its key, so the
+ * result is only ever made of insertions, removals and changes.
+ */
+final class ForecastDiff {
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    // The rows this diff applies to, and the rows it produces
+    final ForecastRow[] oldRows;
+    final ForecastRow[] newRows;
+
+    // Operations as (type, position, count) triples, in dispatch order.  Null when the lists have
+    // nothing in common and the whole data set should be reported as changed.
+    private final int[] mOps;
+    private final int mOpCount;
+
+    private ForecastDiff(ForecastRow[] oldRows, ForecastRow[] newRows, int[] ops, int opCount) {
+        this.oldRows = oldRows;
+        this.newRows = newRows;
+        mOps = ops;
+        mOpCount = opCount;
+    }
+
+    static ForecastDiff compute(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        if (oldRows.length == 0 || newRows.length == 0 ||
+                !oldRows[0].locationSetting.equals(newRows[0].locationSetting)) {
+            return new ForecastDiff(oldRows, newRows, null, 0);
+        }
+
+        // Walk both lists from the end, so that an operation never moves the positions of the
+        // rows still to be visited.  At each step the adapter holds old[0..i] followed by
+        // new[j+1..].
+        int[] ops = new int[3 * 8];
+        int opCount = 0;
+        int i = oldRows.length - 1;
+        int j = newRows.length - 1;
+        while (i >= 0 || j >= 0) {
+            int type;
+            int position;
+            if (j < 0 || (i >= 0 && oldRows[i].date > newRows[j].date)) {
+                type = REMOVE;
+                position = i--;
+            } else if (i < 0 || oldRows[i].date < newRows[j].date) {
+                type = INSERT;
+                position = i + 1;
+                j--;
+            } else {
+                // A row that becomes or stops being the first one switches to or from the
+                // "today" layout, so it has to be rebound even if its content is the same.
+                boolean same = oldRows[i].hasSameContentAs(newRows[j]) && (i == 0) == (j == 0);
+                position = i--;
+                j--;
+                if (same) continue;
+                type = CHANGE;
+            }
+
+            // Extend the previous operation if this one continues it
+            if (opCount > 0) {
+                int last = 3 * (opCount - 1);
+                if (ops[last] == type && type == INSERT && ops[last + 1] == position) {
+                    ops[last + 2]++;
+                    continue;
+                }
+                if (ops[last] == type && type != INSERT && ops[last + 1] == position + 1) {
+                    ops[last + 1] = position;
+                    ops[last + 2]++;
+                    continue;
+                }
+            }
+            if (3 * opCount == ops.length) {
+                ops = Arrays.copyOf(ops, ops.length * 2);
+            }
+            ops[3 * opCount] = type;
+            ops[3 * opCount + 1] = position;
+            ops[3 * opCount + 2] = 1;
+            opCount++;
+        }
+        return new ForecastDiff(oldRows, newRows, ops, opCount);
+    }
+
+    /**
+     * Whether the rows were matched up, as opposed to the whole data set being replaced.
+     */
+    boolean isIncremental() {
+        return mOps != null;
+    }
+
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        if (mOps == null) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+        for (int op = 0; op < 3 * mOpCount; op += 3) {
+            int position = mOps[op + 1];
+            int count = mOps[op + 2];
+            switch (mOps[op]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+}
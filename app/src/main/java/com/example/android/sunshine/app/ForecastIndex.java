@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.HashMap;
+
+/**
+ * Positions of a list of {@link ForecastRow}s, by row id and by date.  It is built once per
+ * load, on the loader's thread, so that finding a selected row again after the data changes
+ * doesn't depend on the length of the list.
+ */
+final class ForecastIndex {
+    static final int NO_POSITION = RecyclerView.NO_POSITION;
+
+    static final ForecastIndex EMPTY = new ForecastIndex(new ForecastRow[0]);
+
+    private final HashMap<Long, Integer> mPositionsById;
+    private final HashMap<Long, Integer> mPositionsByDate;
+
+    ForecastIndex(ForecastRow[] rows) {
+        // Sized so that the maps never rehash at the default load factor
+        int capacity = rows.length * 4 / 3 + 1;
+        mPositionsById = new HashMap<>(capacity);
+        mPositionsByDate = new HashMap<>(capacity);
+        for (int position = 0; position < rows.length; position++) {
+            mPositionsById.put(rows[position].id, position);
+            // Dates only repeat if the rows span locations, in which case keep the first
+            if (!mPositionsByDate.containsKey(rows[position].date)) {
+                mPositionsByDate.put(rows[position].date, position);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the row with {@code id}, or {@link #NO_POSITION}.
+     */
+    int getPositionForId(long id) {
+        Integer position = mPositionsById.get(id);
+        return position == null ? NO_POSITION : position;
+    }
+
+    /**
+     * Returns the position of the row for {@code date}, or {@link #NO_POSITION}.
+     */
+    int getPositionForDate(long date) {
+        Integer position = mPositionsByDate.get(date);
+        return position == null ? NO_POSITION : position;
+    }
+}
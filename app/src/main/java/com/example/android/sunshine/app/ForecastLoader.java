@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A {@link CursorLoader} for the forecast list that also formats every row on the loader's
+ * background thread.  The cursor it delivers is a {@link ForecastCursor} carrying the
+ * {@link ForecastRow}s alongside the data they were built from, an index of their positions,
+ * and the differences from the rows delivered before it.
+ *
+ * The rows hold text for one locale and one day ("Today", "Tomorrow"), so the loader formats
+ * them again when the locale, time zone or date changes, and when it is started again with rows
+ * formatted for a locale or day that is no longer current, as after an activity is recreated.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    /**
+     * A forecast cursor together with its preformatted rows.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final ForecastRow[] mRows;
+        private final ForecastDiff mDiff;
+        private final ForecastIndex mIndex;
+        // What the rows were formatted for
+        private final Locale mLocale;
+        private final int mJulianDay;
+
+        /**
+         * Wraps rows formatted for the current locale and day.
+         */
+        ForecastCursor(Cursor cursor, ForecastRow[] rows, ForecastDiff diff) {
+            this(cursor, rows, diff, Locale.getDefault(), getToday());
+        }
+
+        ForecastCursor(Cursor cursor, ForecastRow[] rows, ForecastDiff diff, Locale locale,
+                       int julianDay) {
+            super(cursor);
+            mRows = rows;
+            mDiff = diff;
+            mIndex = new ForecastIndex(rows);
+            mLocale = locale;
+            mJulianDay = julianDay;
+        }
+
+        public ForecastRow[] getRows() {
+            return mRows;
+        }
+
+        /**
+         * Returns the changes from the rows this loader delivered last, or null if this is the
+         * first delivery.
+         */
+        ForecastDiff getDiff() {
+            return mDiff;
+        }
+
+        /**
+         * Returns the positions of the rows by id and date.
+         */
+        ForecastIndex getIndex() {
+            return mIndex;
+        }
+
+        /**
+         * Whether the rows were formatted for the current locale and day.
+         */
+        boolean isCurrent() {
+            return mLocale.equals(Locale.getDefault()) && mJulianDay == getToday();
+        }
+    }
+
+    // The last delivered cursor, which the next load is diffed against
+    private volatile ForecastCursor mDelivered;
+
+    private BroadcastReceiver mFormatChangedReceiver;
+
+    // Whether this loader is counted as a live feed of its location by ForecastRepository
+    private boolean mFeeding;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) return null;
+        try {
+            // Read before formatting, so that a change while the rows are built leaves them stale
+            Locale locale = Locale.getDefault();
+            int today = getToday();
+            ForecastRow[] rows = ForecastRow.fromCursor(getContext(), cursor);
+            ForecastCursor previous = mDelivered;
+            ForecastDiff diff = previous == null ?
+                    null : ForecastDiff.compute(previous.getRows(), rows);
+            return new ForecastCursor(cursor, rows, diff, locale, today);
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset() && cursor instanceof ForecastCursor) {
+            ForecastCursor forecastCursor = (ForecastCursor) cursor;
+            mDelivered = forecastCursor;
+            ForecastRepository.getInstance().publish(getLocationSetting(),
+                    forecastCursor.getRows(), forecastCursor.getIndex());
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mFormatChangedReceiver == null) {
+            mFormatChangedReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    onContentChanged();
+                }
+            };
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            getContext().registerReceiver(mFormatChangedReceiver, filter);
+        }
+        if (!mFeeding) {
+            mFeeding = true;
+            ForecastRepository.getInstance().onFeedStarted(getLocationSetting());
+        }
+        super.onStartLoading();
+        // A change while no receiver was registered, or one the broadcast hasn't arrived for yet
+        ForecastCursor delivered = mDelivered;
+        if (delivered != null && !delivered.isCurrent()) {
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        super.onStopLoading();
+        if (mFeeding) {
+            mFeeding = false;
+            ForecastRepository.getInstance().onFeedStopped(getLocationSetting());
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        if (mFormatChangedReceiver != null) {
+            getContext().unregisterReceiver(mFormatChangedReceiver);
+            mFormatChangedReceiver = null;
+        }
+        mDelivered = null;
+    }
+
+    private String getLocationSetting() {
+        return WeatherContract.WeatherEntry.getLocationSettingFromUri(getUri());
+    }
+
+    private static int getToday() {
+        long now = System.currentTimeMillis();
+        // Counted in today's offset from GMT, as FriendlyDateFormatter does
+        return Time.getJulianDay(now, TimeZone.getDefault().getOffset(now) / 1000);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The forecast rows most recently loaded for each location, shared by the list and the detail
+ * view.
+ *
+ * {@link ForecastLoader} publishes every set of rows it delivers, so the provider is queried
+ * once per location and change.  The detail view reads the day it shows from here, which lets it
+ * render as soon as it is created, and listens to redraw only when that day's forecast changes.
+ * While a started loader feeds the location it only queries for itself once that feed stops,
+ * as when the list's activity is stopped behind it.
+ * All methods are called on the main thread.
+ */
+public final class ForecastRepository {
+    private static final String LOG_TAG = ForecastRepository.class.getSimpleName();
+
+    public interface Listener {
+        /**
+         * Called when new rows were published for {@code locationSetting}.
+         */
+        void onForecastChanged(String locationSetting);
+
+        /**
+         * Called when no started loader publishes rows for {@code locationSetting} any more.
+         */
+        void onFeedStopped(String locationSetting);
+    }
+
+    private static final ForecastRepository sInstance = new ForecastRepository();
+
+    private final HashMap<String, ForecastRow[]> mRowsByLocation = new HashMap<>();
+    private final HashMap<String, ForecastIndex> mIndexByLocation = new HashMap<>();
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+    // How many started loaders feed each location
+    private final HashMap<String, Integer> mFeedCounts = new HashMap<>();
+
+    // When a day was last picked in the list, for timing how long its details take to appear
+    private long mDetailRequestedAt = -1;
+
+    private ForecastRepository() {
+    }
+
+    public static ForecastRepository getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Replaces the rows of {@code locationSetting}, and tells the listeners.
+     */
+    void publish(String locationSetting, ForecastRow[] rows, ForecastIndex index) {
+        if (locationSetting == null) return;
+        mRowsByLocation.put(locationSetting, rows);
+        mIndexByLocation.put(locationSetting, index);
+        // Copied, so that listeners can unregister while being told
+        Listener[] listeners = mListeners.toArray(new Listener[mListeners.size()]);
+        for (Listener listener : listeners) {
+            listener.onForecastChanged(locationSetting);
+        }
+    }
+
+    /**
+     * Returns the row of {@code locationSetting} for {@code date}, or null if it isn't loaded.
+     */
+    public ForecastRow getRow(String locationSetting, long date) {
+        ForecastIndex index = mIndexByLocation.get(locationSetting);
+        if (index == null) return null;
+        int position = index.getPositionForDate(date);
+        return position == ForecastIndex.NO_POSITION ?
+                null : mRowsByLocation.get(locationSetting)[position];
+    }
+
+    /**
+     * Notes that a started loader will publish the rows of {@code locationSetting} as they change.
+     */
+    void onFeedStarted(String locationSetting) {
+        if (locationSetting == null) return;
+        Integer count = mFeedCounts.get(locationSetting);
+        mFeedCounts.put(locationSetting, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Undoes {@link #onFeedStarted}, and tells the listeners when it was the location's last feed.
+     */
+    void onFeedStopped(String locationSetting) {
+        Integer count = mFeedCounts.get(locationSetting);
+        if (count == null) return;
+        if (count > 1) {
+            mFeedCounts.put(locationSetting, count - 1);
+            return;
+        }
+        mFeedCounts.remove(locationSetting);
+        Listener[] listeners = mListeners.toArray(new Listener[mListeners.size()]);
+        for (Listener listener : listeners) {
+            listener.onFeedStopped(locationSetting);
+        }
+    }
+
+    /**
+     * Whether a started loader publishes the rows of {@code locationSetting} as they change.
+     */
+    public boolean hasLiveFeed(String locationSetting) {
+        return mFeedCounts.containsKey(locationSetting);
+    }
+
+    public void registerListener(Listener listener) {
+        if (!mListeners.contains(listener)) mListeners.add(listener);
+    }
+
+    public void unregisterListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Notes that the user picked a day in the list, to time the detail view against.
+     */
+    void onDetailRequested() {
+        mDetailRequestedAt = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Logs how long the detail view took to draw since the day was picked, if it was.
+     *
+     * @param fromMemory whether the detail view was drawn from this repository's rows
+     */
+    void onDetailDrawn(boolean fromMemory) {
+        if (mDetailRequestedAt < 0) return;
+        Log.d(LOG_TAG, "Click to detail: " + (SystemClock.uptimeMillis() - mDetailRequestedAt) +
+                "ms, " + (fromMemory ? "from memory" : "from a query"));
+        mDetailRequestedAt = -1;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+
+/**
+ * One row of the forecast list with every string and resource already worked out, so that
+ * {@link ForecastAdapter} only has to copy fields into views when it binds.
+ */
+public final class ForecastRow {
+    // Stable id for the adapter, built from the row's (location, date) identity
+    public final long id;
+    public final String locationSetting;
+    public final long date;
+    public final int weatherId;
+
+    // Local icon for the list layout and larger art for the "today" layout
+    public final int iconResource;
+    public final int artResource;
+    // Remote art for the chosen art pack, or null when the app's own graphics are in use
+    public final String artUrl;
+
+    // Day label for the list layout, and for the "today" layout which spells out today's date
+    public final String day;
+    public final String longDay;
+
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String high;
+    public final String highContentDescription;
+    public final String low;
+    public final String lowContentDescription;
+
+    // Unformatted values, for the detail view
+    public final double maxTemp;
+    public final double minTemp;
+    public final float humidity;
+    public final float pressure;
+    public final float windSpeed;
+    public final float degrees;
+
+    private ForecastRow(Context context, Cursor cursor, boolean localGraphics) {
+        locationSetting = cursor.getString(ForecastFragment.COL_LOCATION_SETTING);
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // Dates are whole days, so minutes since the epoch fit in the low half with room to spare
+        id = ((long) locationSetting.hashCode() << 32) | ((date / DateUtils.MINUTE_IN_MILLIS) & 0xffffffffL);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        day = Utility.getFriendlyDayString(context, date, false);
+        // Only today's label differs in the long form
+        longDay = cursor.isFirst() ? Utility.getFriendlyDayString(context, date, true) : day;
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+
+        maxTemp = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        high = Utility.formatTemperature(context, maxTemp);
+        highContentDescription = context.getString(R.string.a11y_high_temp, high);
+        minTemp = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        low = Utility.formatTemperature(context, minTemp);
+        lowContentDescription = context.getString(R.string.a11y_low_temp, low);
+
+        humidity = cursor.getFloat(ForecastFragment.COL_WEATHER_HUMIDITY);
+        pressure = cursor.getFloat(ForecastFragment.COL_WEATHER_PRESSURE);
+        windSpeed = cursor.getFloat(ForecastFragment.COL_WEATHER_WIND_SPEED);
+        degrees = cursor.getFloat(ForecastFragment.COL_WEATHER_DEGREES);
+    }
+
+    /**
+     * Whether this row would be displayed exactly like {@code other}.
+     */
+    boolean hasSameContentAs(ForecastRow other) {
+        return weatherId == other.weatherId &&
+                TextUtils.equals(artUrl, other.artUrl) &&
+                day.equals(other.day) &&
+                longDay.equals(other.longDay) &&
+                description.equals(other.description) &&
+                high.equals(other.high) &&
+                low.equals(other.low);
+    }
+
+    /**
+     * Whether this row holds the same forecast as {@code other}, including the details that the
+     * list doesn't show.
+     */
+    boolean hasSameDetailsAs(ForecastRow other) {
+        return hasSameContentAs(other) &&
+                maxTemp == other.maxTemp &&
+                minTemp == other.minTemp &&
+                humidity == other.humidity &&
+                pressure == other.pressure &&
+                windSpeed == other.windSpeed &&
+                degrees == other.degrees;
+    }
+
+    /**
+     * Builds a row for every forecast in {@code cursor}, which must use the
+     * {@link ForecastFragment} projection.  This does all of the formatting, so call it off the
+     * main thread.  The cursor is left before its first row.
+     */
+    public static ForecastRow[] fromCursor(Context context, Cursor cursor) {
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rows[cursor.getPosition()] = new ForecastRow(context, cursor, localGraphics);
+        }
+        cursor.moveToPosition(-1);
+        return rows;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the day labels used across the app ("Today", "Tomorrow", "Wednesday", "June 24", ...)
+ * without building new formatters for every call.
+ *
+ * The formatters are created once for the current locale and time zone.  The labels of the
+ * coming week, which is nearly everything the app ever shows, are cached by julian day.  The
+ * cache follows the clock across midnight, and is thrown away when the locale, time zone or
+ * system time changes.
+ */
+final class FriendlyDateFormatter {
+
+    // Today plus the six days after it: the window that getFriendlyDayString labels by name
+    private static final int WINDOW_DAYS = 7;
+
+    private static FriendlyDateFormatter sInstance;
+
+    private final Context mContext;
+
+    // Everything below is guarded by this, and rebuilt by reset()
+    private Locale mLocale;
+    private TimeZone mTimeZone;
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mShortDateFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private final Date mDate = new Date();
+    private String mToday;
+    private String mTomorrow;
+
+    // The julian day the window starts at, and its labels, filled in as they are asked for
+    private int mWindowStart = Integer.MIN_VALUE;
+    private final String[] mDayNames = new String[WINDOW_DAYS];
+    private final String[] mMonthDays = new String[WINDOW_DAYS];
+    private final String[] mFullFriendlyDays = new String[WINDOW_DAYS];
+    private String mLongToday;
+
+    private FriendlyDateFormatter(Context context) {
+        mContext = context;
+    }
+
+    static synchronized FriendlyDateFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            final FriendlyDateFormatter formatter =
+                    new FriendlyDateFormatter(context.getApplicationContext());
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            formatter.mContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    formatter.invalidate();
+                }
+            }, filter);
+            sInstance = formatter;
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the formatters and every cached label.
+     */
+    synchronized void invalidate() {
+        mLocale = null;
+    }
+
+    /**
+     * See {@link Utility#getFriendlyDayString(Context, long, boolean)}.
+     */
+    synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int day = prepare(dateInMillis);
+        if (displayLongToday && day == 0) {
+            if (mLongToday == null) {
+                mLongToday = mContext.getString(R.string.format_full_friendly_date, mToday,
+                        getFormattedMonthDay(dateInMillis));
+            }
+            return mLongToday;
+        } else if (day < WINDOW_DAYS) {
+            // Less than a week in the future, so just the day name
+            return getDayName(dateInMillis);
+        } else {
+            // Otherwise, use the form "Mon Jun 3"
+            return format(mShortDateFormat, dateInMillis);
+        }
+    }
+
+    /**
+     * See {@link Utility#getFullFriendlyDayString(Context, long)}.
+     */
+    synchronized String getFullFriendlyDayString(long dateInMillis) {
+        int day = prepare(dateInMillis);
+        if (inWindow(day) && mFullFriendlyDays[day] != null) {
+            return mFullFriendlyDays[day];
+        }
+        String label = mContext.getString(R.string.format_full_friendly_date,
+                getDayName(dateInMillis), getFormattedMonthDay(dateInMillis));
+        if (inWindow(day)) mFullFriendlyDays[day] = label;
+        return label;
+    }
+
+    /**
+     * See {@link Utility#getDayName(Context, long)}.
+     */
+    synchronized String getDayName(long dateInMillis) {
+        int day = prepare(dateInMillis);
+        if (day == 0) return mToday;
+        if (day == 1) return mTomorrow;
+        if (inWindow(day) && mDayNames[day] != null) {
+            return mDayNames[day];
+        }
+        // Otherwise, the format is just the day of the week (e.g "Wednesday")
+        String label = format(mDayNameFormat, dateInMillis);
+        if (inWindow(day)) mDayNames[day] = label;
+        return label;
+    }
+
+    /**
+     * See {@link Utility#getFormattedMonthDay(Context, long)}.
+     */
+    synchronized String getFormattedMonthDay(long dateInMillis) {
+        int day = prepare(dateInMillis);
+        if (inWindow(day) && mMonthDays[day] != null) {
+            return mMonthDays[day];
+        }
+        String label = format(mMonthDayFormat, dateInMillis);
+        if (inWindow(day)) mMonthDays[day] = label;
+        return label;
+    }
+
+    private static boolean inWindow(int day) {
+        return day >= 0 && day < WINDOW_DAYS;
+    }
+
+    private String format(SimpleDateFormat format, long dateInMillis) {
+        mDate.setTime(dateInMillis);
+        return format.format(mDate);
+    }
+
+    /**
+     * Brings the formatters and the window up to date, and returns how many days after today
+     * {@code dateInMillis} falls.
+     */
+    private int prepare(long dateInMillis) {
+        // Locale.getDefault() returns the shared instance, so this is only a reference check.
+        // Time zone changes are caught by the receiver, since TimeZone.getDefault() copies.
+        if (mLocale != Locale.getDefault()) {
+            reset();
+        }
+        long now = System.currentTimeMillis();
+        // Both days are counted in today's offset from GMT, as Utility always has
+        long gmtoff = mTimeZone.getOffset(now) / 1000;
+        int today = Time.getJulianDay(now, gmtoff);
+        if (today != mWindowStart) {
+            // A new day: the whole window shifts
+            mWindowStart = today;
+            clearWindow();
+        }
+        return Time.getJulianDay(dateInMillis, gmtoff) - today;
+    }
+
+    private void reset() {
+        mLocale = Locale.getDefault();
+        mTimeZone = TimeZone.getDefault();
+        mDayNameFormat = new SimpleDateFormat("EEEE", mLocale);
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd", mLocale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", mLocale);
+        mDayNameFormat.setTimeZone(mTimeZone);
+        mShortDateFormat.setTimeZone(mTimeZone);
+        mMonthDayFormat.setTimeZone(mTimeZone);
+        mToday = mContext.getString(R.string.today);
+        mTomorrow = mContext.getString(R.string.tomorrow);
+        clearWindow();
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            mDayNames[i] = null;
+            mMonthDays[i] = null;
+            mFullFriendlyDays[i] = null;
+        }
+        mLongToday = null;
+    }
+}
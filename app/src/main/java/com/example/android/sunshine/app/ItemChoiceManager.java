@@ -37,14 +37,17 @@ public class ItemChoiceManager {
     private int mChoiceMode;
 
     private RecyclerView.Adapter mAdapter;
-    private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
-        @Override
-        public void onChanged() {
-            super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
-        }
-    };
+
+    /**
+     * Implemented by adapters that can find the position of a stable ID directly, so that
+     * checked items are found again after a data set change without searching for them.
+     */
+    public interface PositionLookup {
+        /**
+         * @return the position of the item with {@code id}, or RecyclerView.NO_POSITION
+         */
+        int getPositionForId(long id);
+    }
 
     private ItemChoiceManager() {
     }
@@ -154,6 +157,36 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
+    /**
+     * Moves the checked states to wherever their items are now.  The adapter calls this after
+     * its data set changes.
+     */
+    public void onDataSetChanged() {
+        if (mAdapter != null && mAdapter.hasStableIds()) {
+            if (mAdapter instanceof PositionLookup) {
+                confirmCheckedPositionsByLookup((PositionLookup) mAdapter);
+            } else {
+                confirmCheckedPositionsById(mAdapter.getItemCount());
+            }
+        }
+    }
+
+    void confirmCheckedPositionsByLookup(PositionLookup lookup) {
+        mCheckStates.clear();
+
+        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
+            final long id = mCheckedIdStates.keyAt(checkedIndex);
+            final int position = lookup.getPositionForId(id);
+            if (position == RecyclerView.NO_POSITION) {
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
+            } else {
+                mCheckStates.put(position, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
+            }
+        }
+    }
+
     void confirmCheckedPositionsById(int oldItemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
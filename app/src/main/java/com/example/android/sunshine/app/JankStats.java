@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Per-frame timings of the forecast list, aggregated into histograms.
+ *
+ * While the list scrolls, a Choreographer callback measures the interval between frames and
+ * counts slow frames (a missed vsync) and frozen frames.  The adapter and the scroll listeners
+ * time their own work into the section histograms.  The totals can be read with
+ * {@code adb shell dumpsys activity com.example.android.sunshine.app/.MainActivity}.
+ *
+ * Frame timing needs Jelly Bean; on older devices only the sections are recorded.  Everything
+ * here runs on the main thread.
+ */
+public final class JankStats {
+
+    public static final int SECTION_CREATE_VIEW_HOLDER = 0;
+    public static final int SECTION_BIND_VIEW_HOLDER = 1;
+    public static final int SECTION_SCROLL_LISTENERS = 2;
+    private static final String[] SECTION_NAMES = {
+            "onCreateViewHolder", "onBindViewHolder", "scroll listeners"
+    };
+
+    // A frame is slow when it misses a 60Hz vsync, and frozen when the UI stops responding
+    public static final long SLOW_FRAME_MICROS = 17000;
+    public static final long FROZEN_FRAME_MICROS = 700000;
+
+    // Upper bounds of the histogram buckets, in microseconds; the last bucket is open
+    private static final long[] FRAME_BUCKETS = {
+            8000, 17000, 25000, 34000, 50000, 100000, 250000, FROZEN_FRAME_MICROS
+    };
+    private static final long[] SECTION_BUCKETS = {
+            100, 250, 500, 1000, 2000, 4000, 8000, 16000
+    };
+
+    private static final JankStats sInstance = new JankStats();
+
+    /**
+     * Counts of values by bucket, with their total and maximum.
+     */
+    public static final class Histogram {
+        private final long[] mBounds;
+        private final int[] mCounts;
+        private int mCount;
+        private long mTotal;
+        private long mMax;
+
+        Histogram(long[] bounds) {
+            mBounds = bounds;
+            mCounts = new int[bounds.length + 1];
+        }
+
+        void record(long value) {
+            int bucket = 0;
+            while (bucket < mBounds.length && value > mBounds[bucket]) bucket++;
+            mCounts[bucket]++;
+            mCount++;
+            mTotal += value;
+            if (value > mMax) mMax = value;
+        }
+
+        void reset() {
+            for (int i = 0; i < mCounts.length; i++) mCounts[i] = 0;
+            mCount = 0;
+            mTotal = 0;
+            mMax = 0;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public long getMean() {
+            return mCount == 0 ? 0 : mTotal / mCount;
+        }
+
+        /**
+         * Returns how many values were above {@code threshold}, which must be a bucket bound.
+         */
+        public int getCountAbove(long threshold) {
+            int count = 0;
+            for (int bucket = mBounds.length; bucket > 0 && mBounds[bucket - 1] >= threshold; bucket--) {
+                count += mCounts[bucket];
+            }
+            return count;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the {@code percentile}th value, or the
+         * maximum if that is in the open bucket.
+         */
+        public long getPercentile(int percentile) {
+            int target = (mCount * percentile + 99) / 100;
+            int seen = 0;
+            for (int bucket = 0; bucket < mCounts.length; bucket++) {
+                seen += mCounts[bucket];
+                if (seen >= target && seen > 0) {
+                    return bucket < mBounds.length ? mBounds[bucket] : mMax;
+                }
+            }
+            return 0;
+        }
+
+        void dump(String prefix, String name, PrintWriter writer) {
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "%s: count=%d mean=%dus p50<=%dus p90<=%dus " +
+                    "p99<=%dus max=%dus", name, mCount, getMean(), getPercentile(50),
+                    getPercentile(90), getPercentile(99), mMax));
+            writer.print(prefix);
+            writer.print("  buckets:");
+            for (int bucket = 0; bucket < mCounts.length; bucket++) {
+                writer.print(bucket < mBounds.length ? " <=" + mBounds[bucket] : " >" + mBounds[bucket - 1]);
+                writer.print(':');
+                writer.print(mCounts[bucket]);
+            }
+            writer.println();
+        }
+    }
+
+    private final Histogram mFrames = new Histogram(FRAME_BUCKETS);
+    private final Histogram[] mSections = {
+            new Histogram(SECTION_BUCKETS), new Histogram(SECTION_BUCKETS), new Histogram(SECTION_BUCKETS)
+    };
+
+    private Object mFrameCallback;
+    private boolean mTrackingFrames;
+    private boolean mFramePosted;
+    private long mLastFrameNanos;
+    private long mScrollListenersStart;
+
+    private JankStats() {
+    }
+
+    public static JankStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns a start time for {@link #endSection(int, long)}.
+     */
+    public static long startSection() {
+        return System.nanoTime();
+    }
+
+    public void endSection(int section, long start) {
+        mSections[section].record((System.nanoTime() - start) / 1000);
+    }
+
+    public Histogram getFrames() {
+        return mFrames;
+    }
+
+    public Histogram getSection(int section) {
+        return mSections[section];
+    }
+
+    public void reset() {
+        mFrames.reset();
+        for (Histogram section : mSections) section.reset();
+    }
+
+    /**
+     * Adds listeners to {@code recyclerView} that record its frames while it scrolls, and time
+     * the scroll listeners added between this call and {@link #endScrollListeners}.
+     */
+    public void beginScrollListeners(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    stopFrames();
+                } else {
+                    startFrames();
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                mScrollListenersStart = startSection();
+            }
+        });
+    }
+
+    /**
+     * Adds the listener that ends the timing started by {@link #beginScrollListeners}.  The
+     * RecyclerView calls its listeners in the order they were added.
+     */
+    public void endScrollListeners(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (mScrollListenersStart != 0) {
+                    endSection(SECTION_SCROLL_LISTENERS, mScrollListenersStart);
+                    mScrollListenersStart = 0;
+                }
+            }
+        });
+    }
+
+    private void startFrames() {
+        if (mTrackingFrames || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) return;
+        mTrackingFrames = true;
+        mLastFrameNanos = 0;
+        // A callback from before the last stop may still be pending, and will carry on
+        if (!mFramePosted) postFrameCallback();
+    }
+
+    private void stopFrames() {
+        mTrackingFrames = false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    mFramePosted = false;
+                    if (!mTrackingFrames) return;
+                    if (mLastFrameNanos != 0) {
+                        mFrames.record((frameTimeNanos - mLastFrameNanos) / 1000);
+                    }
+                    mLastFrameNanos = frameTimeNanos;
+                    postFrameCallback();
+                }
+            };
+        }
+        mFramePosted = true;
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    /**
+     * Writes the histograms, for dumpsys or a bug report.
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "Forecast list frames: %d slow (>%dms), %d frozen (>%dms)",
+                mFrames.getCountAbove(SLOW_FRAME_MICROS), SLOW_FRAME_MICROS / 1000,
+                mFrames.getCountAbove(FROZEN_FRAME_MICROS), FROZEN_FRAME_MICROS / 1000));
+        mFrames.dump(prefix + "  ", "frame intervals", writer);
+        for (int section = 0; section < mSections.length; section++) {
+            mSections[section].dump(prefix + "  ", SECTION_NAMES[section], writer);
+        }
+    }
+}
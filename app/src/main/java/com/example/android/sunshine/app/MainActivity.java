@@ -36,6 +36,9 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -48,6 +51,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.markActivityCreated();
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
@@ -89,8 +93,28 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        StartupTrace.mark("activity views created");
 
+        // Setting up the sync account and GCM involve IPC to system services and Play Services,
+        // and nothing on the first frame depends on them, so leave them until it is drawn.
+        DeferredInitializer.runAfterFirstDraw(this, new Runnable() {
+            @Override
+            public void run() {
+                SunshineSyncAdapter.initializeSyncAdapter(MainActivity.this);
+                StartupTrace.mark("sync account ready");
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                if (!isFinishing()) {
+                    registerGcmIfNeeded();
+                }
+                StartupTrace.mark("gcm checked");
+            }
+        });
+    }
+
+    private void registerGcmIfNeeded() {
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
@@ -176,6 +200,12 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        JankStats.getInstance().dump(prefix, writer);
+    }
+
     /**
      * Check the device to make sure it has the Google Play Services APK. If
      * it doesn't, display a dialog that allows users to download the APK from
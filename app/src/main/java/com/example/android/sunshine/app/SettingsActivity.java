@@ -31,6 +31,7 @@ import android.view.View;
 import android.widget.ImageView;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.WeatherNotificationService;
 import com.google.android.gms.location.places.Place;
 import com.google.android.gms.location.places.ui.PlacePicker;
 import com.google.android.gms.maps.model.LatLng;
@@ -177,6 +178,13 @@ public class SettingsActivity extends PreferenceActivity
             bindPreferenceSummaryToValue(locationPreference);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
+            String artPack = sharedPreferences.getString(key, getString(R.string.pref_art_pack_sunshine));
+            if ( !artPack.equals(getString(R.string.pref_art_pack_sunshine)) ) {
+                // Fetch the whole pack now, so that the list doesn't wait for it row by row
+                ForecastArtPreloader.warmArtPack(this, artPack);
+                // Nor the notification, the first time it shows each condition
+                WeatherNotificationService.prerenderArtPack(this, artPack);
+            }
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
     }
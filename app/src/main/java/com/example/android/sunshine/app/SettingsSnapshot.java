@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Locale;
+
+/**
+ * An immutable copy of the user's settings that the app reads on its hot paths, such as
+ * formatting every forecast row and widget row.
+ *
+ * {@link #get(Context)} is a single volatile read.  A preference listener registered on first
+ * use replaces the snapshot whenever a setting changes.
+ */
+public final class SettingsSnapshot {
+
+    public final String locationSetting;
+    public final boolean metric;
+    public final boolean localGraphics;
+    public final boolean latLonAvailable;
+    public final float latitude;
+    public final float longitude;
+    // Art pack URLs, by WeatherConditions condition
+    private final String[] mArtUrls;
+
+    private static volatile SettingsSnapshot sCurrent;
+    // Preferences only hold their listeners weakly, so keep this one alive here
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        locationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        localGraphics = artPack.equals(sunshineArtPack);
+        mArtUrls = new String[WeatherConditions.CONDITION_COUNT];
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            mArtUrls[condition] = String.format(Locale.US, artPack,
+                    WeatherConditions.getConditionSlug(condition));
+        }
+
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        latLonAvailable = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        latitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        longitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+    }
+
+    /**
+     * Returns the current settings.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        return snapshot != null ? snapshot : init(context);
+    }
+
+    private static synchronized SettingsSnapshot init(Context context) {
+        if (sCurrent == null) {
+            final Context appContext = context.getApplicationContext() != null ?
+                    context.getApplicationContext() : context;
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    rebuild(appContext, prefs);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sCurrent = new SettingsSnapshot(appContext, prefs);
+        }
+        return sCurrent;
+    }
+
+    private static synchronized void rebuild(Context context, SharedPreferences prefs) {
+        sCurrent = new SettingsSnapshot(context, prefs);
+    }
+
+    /**
+     * Returns the art pack URL for {@code weatherId}, or null if it has no artwork.
+     */
+    public String getArtUrl(int weatherId) {
+        int condition = WeatherConditions.getCondition(weatherId);
+        return condition == WeatherConditions.NONE ? null : mArtUrls[condition];
+    }
+}
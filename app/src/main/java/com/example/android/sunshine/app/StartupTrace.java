@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records a timeline of a cold start, from the process starting to the forecast list showing its
+ * first rows, and logs it once the list is populated.
+ *
+ * The timeline starts when this class is first loaded.  The content provider marks its creation
+ * first thing, and providers are created before anything else in the process runs, so that is as
+ * close to the process start as the app can see.
+ *
+ * The process is often started for something else: a sync, a push or a widget update.  Those
+ * components report themselves, and a launch after one of them, or long after the process
+ * started, is not a cold start; its trace is dropped rather than logged.
+ */
+public final class StartupTrace {
+    private static final String LOG_TAG = StartupTrace.class.getSimpleName();
+
+    private static final long START = SystemClock.elapsedRealtime();
+    private static final int MAX_MARKS = 16;
+    // How soon after the process starts the activity must be created to count as a cold start
+    private static final long COLD_START_WINDOW_MILLIS = 5000;
+
+    private static final String[] sNames = new String[MAX_MARKS];
+    private static final long[] sTimes = new long[MAX_MARKS];
+    private static int sCount;
+    private static boolean sFinished;
+    private static boolean sActivityCreated;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Records that the startup reached {@code name}.  Does nothing once the trace is finished.
+     */
+    public static synchronized void mark(String name) {
+        if (sFinished || sCount == MAX_MARKS) return;
+        sNames[sCount] = name;
+        sTimes[sCount] = SystemClock.elapsedRealtime() - START;
+        sCount++;
+    }
+
+    /**
+     * Records that the launcher activity was created, which is where a cold start's timeline
+     * continues after the provider.  Drops the trace if the process started too long before.
+     */
+    public static synchronized void markActivityCreated() {
+        if (sFinished) return;
+        long sinceStart = SystemClock.elapsedRealtime() - START;
+        if (sinceStart > COLD_START_WINDOW_MILLIS) {
+            drop("activity created " + sinceStart + "ms after the process started");
+            return;
+        }
+        sActivityCreated = true;
+        mark("activity created");
+    }
+
+    /**
+     * Records that {@code component} started.  If the launcher activity wasn't created yet, the
+     * process was started for the component, and the trace is dropped.
+     */
+    public static synchronized void markBackgroundStart(String component) {
+        if (sFinished || sActivityCreated) return;
+        drop("the process was started for " + component);
+    }
+
+    private static void drop(String reason) {
+        sFinished = true;
+        Log.d(LOG_TAG, "Not a cold start: " + reason);
+    }
+
+    /**
+     * Records the last point of the startup, and logs the timeline.
+     */
+    public static synchronized void finish(String name) {
+        if (sFinished) return;
+        mark(name);
+        sFinished = true;
+
+        StringBuilder timeline = new StringBuilder("Cold start:");
+        for (int i = 0; i < sCount; i++) {
+            timeline.append(' ').append(sNames[i]).append(" +").append(sTimes[i]).append("ms");
+            if (i < sCount - 1) timeline.append(',');
+        }
+        Log.i(LOG_TAG, timeline.toString());
+    }
+
+    /**
+     * Returns whether the timeline has been logged or dropped, after which marks are ignored.
+     */
+    public static synchronized boolean isFinished() {
+        return sFinished;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/**
+ * Full-text index over the city name and location setting of every cached location, used to
+ * suggest locations the app already knows about while the user is typing.
+ *
+ * The index is an FTS3 table (FTS4 needs Honeycomb) whose docid is the location row id.  It is
+ * kept in step with the location table by {@link WeatherProvider}'s write paths, and rebuilt
+ * wholesale after a snapshot restore.
+ */
+class LocationSearchIndex {
+
+    static final String TABLE_NAME = "location_search";
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private LocationSearchIndex() {
+    }
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_NAME + " USING fts3(" +
+                LocationEntry.COLUMN_CITY_NAME + ", " +
+                LocationEntry.COLUMN_LOCATION_SETTING + ");");
+    }
+
+    static void drop(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+    }
+
+    /**
+     * Indexes a location row that has just been inserted.
+     */
+    static void onInsert(SQLiteDatabase db, long id, ContentValues values) {
+        ContentValues indexValues = new ContentValues(3);
+        indexValues.put("docid", id);
+        indexValues.put(LocationEntry.COLUMN_CITY_NAME,
+                values.getAsString(LocationEntry.COLUMN_CITY_NAME));
+        indexValues.put(LocationEntry.COLUMN_LOCATION_SETTING,
+                values.getAsString(LocationEntry.COLUMN_LOCATION_SETTING));
+        db.insert(TABLE_NAME, null, indexValues);
+    }
+
+    /**
+     * Removes the index entries for the location rows matched by {@code selection}.  Must be
+     * called before the rows themselves are deleted.
+     */
+    static void beforeDelete(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        db.delete(TABLE_NAME, "docid IN (SELECT " + LocationEntry._ID + " FROM " +
+                LocationEntry.TABLE_NAME + " WHERE " + selection + ")", selectionArgs);
+    }
+
+    /**
+     * Re-indexes the given location rows after an update.
+     */
+    static void refresh(SQLiteDatabase db, long[] ids) {
+        if (ids.length == 0) return;
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) in.append(',');
+            in.append(ids[i]);
+        }
+        db.delete(TABLE_NAME, "docid IN (" + in + ")", null);
+        db.execSQL(buildCopySql(LocationEntry._ID + " IN (" + in + ")"));
+    }
+
+    /**
+     * Rebuilds the whole index from the location table.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(TABLE_NAME, null, null);
+        db.execSQL(buildCopySql("1"));
+    }
+
+    private static String buildCopySql(String where) {
+        return "INSERT INTO " + TABLE_NAME + " (docid, " + LocationEntry.COLUMN_CITY_NAME + ", " +
+                LocationEntry.COLUMN_LOCATION_SETTING + ") SELECT " + LocationEntry._ID + ", " +
+                LocationEntry.COLUMN_CITY_NAME + ", " + LocationEntry.COLUMN_LOCATION_SETTING +
+                " FROM " + LocationEntry.TABLE_NAME + " WHERE " + where;
+    }
+
+    /**
+     * Returns the locations whose city name or location setting contains words starting with
+     * every word of {@code query}.  Unless a sort order is given, locations whose city name
+     * starts with the query come first, then those whose location setting does, and shorter
+     * names rank above longer ones.
+     */
+    static Cursor search(SQLiteDatabase db, String query, String[] projection, String sortOrder,
+                         int limit) {
+        // Anything that isn't a letter or digit separates words, the same way the FTS tokenizer
+        // sees them.  This also keeps user input from injecting FTS or LIKE syntax.
+        String[] words = query.split("[^\\p{L}\\p{N}]+");
+        StringBuilder match = new StringBuilder();
+        StringBuilder plain = new StringBuilder();
+        for (String token : words) {
+            if (token.length() == 0) continue;
+            if (match.length() > 0) {
+                match.append(' ');
+                plain.append(' ');
+            }
+            match.append(token).append('*');
+            plain.append(token);
+        }
+        if (match.length() == 0) {
+            // Nothing searchable was typed; return an empty result with the right columns
+            return db.query(LocationEntry.TABLE_NAME, projection, "0", null, null, null, null);
+        }
+
+        if (sortOrder == null) {
+            String prefix = DatabaseUtils.sqlEscapeString(plain + "%");
+            sortOrder = "CASE WHEN " + LocationEntry.COLUMN_CITY_NAME + " LIKE " + prefix +
+                    " THEN 0 WHEN " + LocationEntry.COLUMN_LOCATION_SETTING + " LIKE " + prefix +
+                    " THEN 1 ELSE 2 END, length(" + LocationEntry.COLUMN_CITY_NAME + "), " +
+                    LocationEntry.COLUMN_CITY_NAME;
+        }
+
+        return db.query(LocationEntry.TABLE_NAME,
+                projection,
+                LocationEntry._ID + " IN (SELECT docid FROM " + TABLE_NAME + " WHERE " +
+                        TABLE_NAME + " MATCH ?)",
+                new String[]{match.toString()},
+                null,
+                null,
+                sortOrder,
+                Integer.toString(limit > 0 ? limit : DEFAULT_LIMIT));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * The handful of fields that widgets, Muzei, notifications and the wearable need to show
+ * today's weather for a location.
+ *
+ * Use {@link #load(Context, String)} to read it.  On Honeycomb and above this is a single
+ * {@link android.content.ContentResolver#call} that the provider answers from memory, instead of
+ * a query that allocates a cursor window to read one row.
+ */
+public final class TodaySummary {
+
+    public final long date;
+    public final int weatherId;
+    public final double high;
+    public final double low;
+    public final String description;
+
+    static final String[] PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_SHORT_DESC = 4;
+
+    TodaySummary(long date, int weatherId, double high, double low, String description) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+        this.description = description;
+    }
+
+    /**
+     * Returns the earliest forecast from today onwards for {@code locationSetting}, or null if
+     * there is none.
+     */
+    public static TodaySummary load(Context context, String locationSetting) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return fromBundle(call(context, locationSetting));
+        }
+        return loadFromCursor(context, locationSetting);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Bundle call(Context context, String locationSetting) {
+        return context.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_GET_TODAY_SUMMARY, locationSetting, null);
+    }
+
+    /**
+     * Reads the summary through a regular provider query.  Used before Honeycomb, where
+     * ContentResolver.call() is unavailable.
+     */
+    static TodaySummary loadFromCursor(Context context, String locationSetting) {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        return fromCursor(context.getContentResolver().query(uri, PROJECTION, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC"));
+    }
+
+    /**
+     * Reads the summary straight from the database.  This is what the provider caches.
+     */
+    static TodaySummary query(SQLiteDatabase db, String locationSetting, long today) {
+        return fromCursor(db.query(
+                WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME +
+                        " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY +
+                        " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID,
+                PROJECTION,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                        WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{locationSetting, Long.toString(today)},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC",
+                "1"));
+    }
+
+    private static TodaySummary fromCursor(Cursor cursor) {
+        if (cursor == null) return null;
+        try {
+            if (!cursor.moveToFirst()) return null;
+            return new TodaySummary(
+                    cursor.getLong(INDEX_DATE),
+                    cursor.getInt(INDEX_WEATHER_ID),
+                    cursor.getDouble(INDEX_MAX_TEMP),
+                    cursor.getDouble(INDEX_MIN_TEMP),
+                    cursor.getString(INDEX_SHORT_DESC));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLong(WeatherEntry.COLUMN_DATE, date);
+        bundle.putInt(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        bundle.putDouble(WeatherEntry.COLUMN_MAX_TEMP, high);
+        bundle.putDouble(WeatherEntry.COLUMN_MIN_TEMP, low);
+        bundle.putString(WeatherEntry.COLUMN_SHORT_DESC, description);
+        return bundle;
+    }
+
+    private static TodaySummary fromBundle(Bundle bundle) {
+        if (bundle == null || !bundle.containsKey(WeatherEntry.COLUMN_DATE)) return null;
+        return new TodaySummary(
+                bundle.getLong(WeatherEntry.COLUMN_DATE),
+                bundle.getInt(WeatherEntry.COLUMN_WEATHER_ID),
+                bundle.getDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                bundle.getDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                bundle.getString(WeatherEntry.COLUMN_SHORT_DESC));
+    }
+}
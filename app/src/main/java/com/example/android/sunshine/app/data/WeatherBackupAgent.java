@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.app.backup.BackupAgentHelper;
+import android.app.backup.FileBackupHelper;
+
+/**
+ * Backs up the weather snapshot, so that a reinstall restores it before the database is first
+ * created and {@link WeatherDbHelper} can show the last known forecast straight away.
+ *
+ * The backup transport limits how much an app may store, so a snapshot of a very large
+ * database is not backed up; the first sync after a reinstall fills the tables as usual.
+ */
+public class WeatherBackupAgent extends BackupAgentHelper {
+    private static final String SNAPSHOT_KEY = "snapshot";
+
+    @Override
+    public void onCreate() {
+        addHelper(SNAPSHOT_KEY, new FileBackupHelper(this, WeatherSnapshot.SNAPSHOT_FILE_NAME));
+    }
+}
@@ -43,6 +43,34 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_NEAREST = "nearest";
+    public static final String PATH_SEARCH = "search";
+
+    // Provider methods available through ContentResolver.call().  The snapshot methods both
+    // return a Bundle holding EXTRA_ROW_COUNT, which is -1 if the snapshot could not be written
+    // or read, and EXTRA_ELAPSED_MILLIS.  An export leaves a snapshot younger than a few hours
+    // in place, and counts 0 rows.
+    public static final String METHOD_EXPORT_SNAPSHOT = "export_snapshot";
+    public static final String METHOD_RESTORE_SNAPSHOT = "restore_snapshot";
+
+    public static final String EXTRA_ROW_COUNT = "row_count";
+    public static final String EXTRA_ELAPSED_MILLIS = "elapsed_millis";
+
+    // Returns today's forecast for the location setting passed as the argument, or null if there
+    // is none.  Read it with TodaySummary.load() rather than calling this directly.
+    public static final String METHOD_GET_TODAY_SUMMARY = "today_summary";
+
+    // Returns the statistics of the provider's writer thread: the current and highest number of
+    // queued write batches, how many batches and transactions have been committed, and the
+    // average and worst commit latency.
+    public static final String METHOD_GET_WRITER_METRICS = "writer_metrics";
+
+    public static final String EXTRA_QUEUE_DEPTH = "queue_depth";
+    public static final String EXTRA_MAX_QUEUE_DEPTH = "max_queue_depth";
+    public static final String EXTRA_BATCH_COUNT = "batch_count";
+    public static final String EXTRA_TRANSACTION_COUNT = "transaction_count";
+    public static final String EXTRA_AVERAGE_COMMIT_MICROS = "average_commit_micros";
+    public static final String EXTRA_MAX_COMMIT_MICROS = "max_commit_micros";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -81,9 +109,72 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Time of the last successful sync for this location, in milliseconds since the epoch.
+        // Used to decide whether a nearby location's forecast is fresh enough to reuse.
+        public static final String COLUMN_LAST_SYNC = "last_sync";
+
+        // The "issued" time of the last forecast push applied to this location, by the push
+        // server's clock, or 0 if the location was synced from the network since.  Only ever
+        // compared with the times of other pushes.
+        public static final String COLUMN_LAST_PUSH_ISSUED = "last_push_issued";
+
+        // Query parameters for the nearest location lookup
+        public static final String PARAM_LATITUDE = "lat";
+        public static final String PARAM_LONGITUDE = "lon";
+        public static final String PARAM_RADIUS = "radius";
+
+        // Maximum number of rows returned by a location search
+        public static final String PARAM_LIMIT = "limit";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /**
+         * Builds a URI that returns the single cached location closest to the given point, or
+         * nothing if no cached location lies within {@code radiusMeters}.
+         */
+        public static Uri buildNearestLocationUri(double lat, double lon, double radiusMeters) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAREST)
+                    .appendQueryParameter(PARAM_LATITUDE, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LONGITUDE, Double.toString(lon))
+                    .appendQueryParameter(PARAM_RADIUS, Double.toString(radiusMeters))
+                    .build();
+        }
+
+        /**
+         * Builds a URI that returns the cached locations whose city name or location setting
+         * has words starting with the words of {@code query}, best matches first.
+         */
+        public static Uri buildLocationSearchUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
+        }
+
+        public static Uri buildLocationSearchUri(String query, int limit) {
+            return buildLocationSearchUri(query).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static String getSearchQueryFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        public static int getSearchLimitFromUri(Uri uri) {
+            String limit = uri.getQueryParameter(PARAM_LIMIT);
+            return limit != null && limit.length() > 0 ? Integer.parseInt(limit) : 0;
+        }
+
+        public static double getLatitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LATITUDE));
+        }
+
+        public static double getLongitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LONGITUDE));
+        }
+
+        public static double getRadiusFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_RADIUS));
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
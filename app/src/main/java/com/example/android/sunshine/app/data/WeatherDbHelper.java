@@ -15,25 +15,50 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
+    static final String LOCATION_COORD_INDEX = "location_coord_index";
+
+    private final Context mContext;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
+        enableWriteAheadLogging();
+    }
+
+    /**
+     * Lets the provider's writes go ahead while a snapshot export is reading, on Jelly Bean and
+     * above.  Older devices serialize the two.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void enableWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
     }
 
     @Override
@@ -45,9 +70,17 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_LAST_SYNC + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_LAST_PUSH_ISSUED + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
+        // Nearest location lookups are answered with a bounding box range scan over this index
+        // followed by an exact distance check on the few rows inside the box.
+        final String SQL_CREATE_LOCATION_COORD_INDEX = "CREATE INDEX " + LOCATION_COORD_INDEX +
+                " ON " + LocationEntry.TABLE_NAME + " (" +
+                LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG + ");";
+
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
                 // Why AutoIncrement here, and not above?
                 // Unique keys will be auto-generated in either case.  But for weather
@@ -80,7 +113,28 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_COORD_INDEX);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        LocationSearchIndex.create(sqLiteDatabase);
+
+        restoreSnapshot(sqLiteDatabase);
+    }
+
+    /**
+     * Warm-starts a freshly created database from the last exported snapshot, if there is one,
+     * so the forecast list has something to show before the first sync completes.
+     */
+    private void restoreSnapshot(SQLiteDatabase sqLiteDatabase) {
+        File snapshot = WeatherSnapshot.getSnapshotFile(mContext);
+        if (!snapshot.exists()) return;
+        try {
+            WeatherSnapshot.restore(sqLiteDatabase, snapshot);
+        } catch (IOException | SQLException e) {
+            // The snapshot is only an optimization; a bad one is discarded and the next sync
+            // will fill the database as usual.
+            Log.w(LOG_TAG, "Discarding unusable snapshot", e);
+            snapshot.delete();
+        }
     }
 
     @Override
@@ -93,6 +147,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        LocationSearchIndex.drop(sqLiteDatabase);
         onCreate(sqLiteDatabase);
     }
 }
@@ -16,6 +16,7 @@
 package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
+import android.app.backup.BackupManager;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
@@ -23,17 +24,47 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.StartupTrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
+    // How old the snapshot may get before an export request rewrites it
+    private static final long SNAPSHOT_MAX_AGE_MILLIS = 6 * DateUtils.HOUR_IN_MILLIS;
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    // Every write to the database goes through this, on its own thread
+    private WeatherWriter mWriter;
+
+    // Today's summary per location setting, served by call() without a database round trip.
+    // Every write clears it, and a change of day forces it to be recomputed.  The generation
+    // keeps a summary computed before a write from being cached after it.
+    private final HashMap<String, TodaySummary> mTodaySummaries = new HashMap<>();
+    private long mTodaySummaryDay;
+    private int mTodaySummaryGeneration;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAREST = 301;
+    static final int LOCATION_SEARCH = 302;
+
+    // Mean radius of the earth, used for great-circle distances
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+    // Length of one degree of latitude
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -108,6 +139,81 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private static final String[] sNearestCandidateColumns = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private Cursor getNearestLocation(Uri uri, String[] projection) {
+        double lat = WeatherContract.LocationEntry.getLatitudeFromUri(uri);
+        double lon = WeatherContract.LocationEntry.getLongitudeFromUri(uri);
+        double radius = WeatherContract.LocationEntry.getRadiusFromUri(uri);
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+
+        // Narrow the search to the bounding box around the point using the coordinate index,
+        // then pick the closest candidate by great-circle distance.
+        double deltaLat = radius / METERS_PER_DEGREE;
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double deltaLon = cosLat > 1e-6 ? deltaLat / cosLat : 180;
+
+        String selection = WeatherContract.LocationEntry.COLUMN_COORD_LAT + " BETWEEN ? AND ? AND ";
+        double west = lon - deltaLon;
+        double east = lon + deltaLon;
+        if (deltaLon >= 180) {
+            selection += "1";
+        } else if (west < -180 || east > 180) {
+            // The box straddles the antimeridian
+            selection += "(" + WeatherContract.LocationEntry.COLUMN_COORD_LONG + " >= ? OR " +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LONG + " <= ?)";
+            west = west < -180 ? west + 360 : west;
+            east = east > 180 ? east - 360 : east;
+        } else {
+            selection += WeatherContract.LocationEntry.COLUMN_COORD_LONG + " BETWEEN ? AND ?";
+        }
+        String[] selectionArgs = deltaLon >= 180
+                ? new String[]{Double.toString(lat - deltaLat), Double.toString(lat + deltaLat)}
+                : new String[]{Double.toString(lat - deltaLat), Double.toString(lat + deltaLat),
+                        Double.toString(west), Double.toString(east)};
+
+        long nearestId = -1;
+        double nearestDistance = radius;
+        Cursor candidates = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                sNearestCandidateColumns, selection, selectionArgs, null, null, null);
+        try {
+            while (candidates.moveToNext()) {
+                double distance = distanceMeters(lat, lon,
+                        candidates.getDouble(1), candidates.getDouble(2));
+                if (distance <= nearestDistance) {
+                    nearestDistance = distance;
+                    nearestId = candidates.getLong(0);
+                }
+            }
+        } finally {
+            candidates.close();
+        }
+
+        return db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                projection,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(nearestId)},
+                null,
+                null,
+                null);
+    }
+
+    /**
+     * @return the great-circle distance between two points, in meters
+     */
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +236,10 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" + WeatherContract.PATH_NEAREST,
+                LOCATION_NEAREST);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" + WeatherContract.PATH_SEARCH + "/*",
+                LOCATION_SEARCH);
         return matcher;
     }
 
@@ -139,7 +249,9 @@ public class WeatherProvider extends ContentProvider {
      */
     @Override
     public boolean onCreate() {
+        StartupTrace.mark("provider created");
         mOpenHelper = new WeatherDbHelper(getContext());
+        mWriter = new WeatherWriter(mOpenHelper);
         return true;
     }
 
@@ -164,6 +276,10 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_NEAREST:
+                return WeatherContract.LocationEntry.CONTENT_ITEM_TYPE;
+            case LOCATION_SEARCH:
+                return WeatherContract.LocationEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +329,20 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearest"
+            case LOCATION_NEAREST: {
+                retCursor = getNearestLocation(uri, projection);
+                break;
+            }
+            // "location/search/*"
+            case LOCATION_SEARCH: {
+                retCursor = LocationSearchIndex.search(mOpenHelper.getReadableDatabase(),
+                        WeatherContract.LocationEntry.getSearchQueryFromUri(uri),
+                        projection,
+                        sortOrder,
+                        WeatherContract.LocationEntry.getSearchLimitFromUri(uri));
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -225,15 +355,19 @@ public class WeatherProvider extends ContentProvider {
         Student: Add the ability to insert Locations to the implementation of this function.
      */
     @Override
-    public Uri insert(Uri uri, ContentValues values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+    public Uri insert(Uri uri, final ContentValues values) {
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
 
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id = mWriter.execute(new WeatherWriter.Batch<Long>() {
+                    @Override
+                    public Long apply(SQLiteDatabase db) {
+                        return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    }
+                });
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -241,7 +375,14 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                long _id = mWriter.execute(new WeatherWriter.Batch<Long>() {
+                    @Override
+                    public Long apply(SQLiteDatabase db) {
+                        long id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                        if ( id > 0 ) LocationSearchIndex.onInsert(db, id, values);
+                        return id;
+                    }
+                });
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
@@ -251,31 +392,41 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
+        invalidateTodaySummaries();
         getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
     @Override
-    public int delete(Uri uri, String selection, String[] selectionArgs) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+    public int delete(Uri uri, String selection, final String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
-        if ( null == selection ) selection = "1";
+        final String where = null == selection ? "1" : selection;
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = mWriter.execute(new WeatherWriter.Batch<Integer>() {
+                    @Override
+                    public Integer apply(SQLiteDatabase db) {
+                        return db.delete(WeatherContract.WeatherEntry.TABLE_NAME, where, selectionArgs);
+                    }
+                });
                 break;
             case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = mWriter.execute(new WeatherWriter.Batch<Integer>() {
+                    @Override
+                    public Integer apply(SQLiteDatabase db) {
+                        LocationSearchIndex.beforeDelete(db, where, selectionArgs);
+                        return db.delete(WeatherContract.LocationEntry.TABLE_NAME, where, selectionArgs);
+                    }
+                });
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
+            invalidateTodaySummaries();
             getContext().getContentResolver().notifyChange(uri, null);
         }
         return rowsDeleted;
@@ -291,57 +442,210 @@ public class WeatherProvider extends ContentProvider {
 
     @Override
     public int update(
-            Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            Uri uri, final ContentValues values, final String selection, final String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
 
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                rowsUpdated = mWriter.execute(new WeatherWriter.Batch<Integer>() {
+                    @Override
+                    public Integer apply(SQLiteDatabase db) {
+                        return db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
+                                selectionArgs);
+                    }
+                });
                 break;
             case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                rowsUpdated = mWriter.execute(new WeatherWriter.Batch<Integer>() {
+                    @Override
+                    public Integer apply(SQLiteDatabase db) {
+                        // The selection may no longer match once the row is updated, so find the
+                        // rows to re-index first.
+                        long[] ids = queryLocationIds(db, selection, selectionArgs);
+                        int count = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                                selection, selectionArgs);
+                        if (values.containsKey(WeatherContract.LocationEntry.COLUMN_CITY_NAME) ||
+                                values.containsKey(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING)) {
+                            LocationSearchIndex.refresh(db, ids);
+                        }
+                        return count;
+                    }
+                });
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
+            invalidateTodaySummaries();
             getContext().getContentResolver().notifyChange(uri, null);
         }
         return rowsUpdated;
     }
 
+    private static long[] queryLocationIds(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                selection, selectionArgs, null, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
-    public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+    public int bulkInsert(Uri uri, final ContentValues[] values) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
+                for (ContentValues value : values) {
+                    normalizeDate(value);
+                }
+                int returnCount = mWriter.execute(new WeatherWriter.Batch<Integer>() {
+                    @Override
+                    public Integer apply(SQLiteDatabase db) {
+                        int count = 0;
+                        for (ContentValues value : values) {
+                            long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                            if (_id != -1) {
+                                count++;
+                            }
                         }
+                        return count;
                     }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
-                }
+                });
+                invalidateTodaySummaries();
                 getContext().getContentResolver().notifyChange(uri, null);
                 return returnCount;
+            case LOCATION: {
+                int locationCount = mWriter.execute(new WeatherWriter.Batch<Integer>() {
+                    @Override
+                    public Integer apply(SQLiteDatabase db) {
+                        int count = 0;
+                        for (ContentValues value : values) {
+                            long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, value);
+                            if (_id != -1) {
+                                LocationSearchIndex.onInsert(db, _id, value);
+                                count++;
+                            }
+                        }
+                        return count;
+                    }
+                });
+                invalidateTodaySummaries();
+                getContext().getContentResolver().notifyChange(uri, null);
+                return locationCount;
+            }
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_EXPORT_SNAPSHOT.equals(method)) {
+            return exportSnapshot();
+        } else if (WeatherContract.METHOD_RESTORE_SNAPSHOT.equals(method)) {
+            return restoreSnapshot();
+        } else if (WeatherContract.METHOD_GET_TODAY_SUMMARY.equals(method)) {
+            TodaySummary summary = getTodaySummary(arg);
+            return summary != null ? summary.toBundle() : null;
+        } else if (WeatherContract.METHOD_GET_WRITER_METRICS.equals(method)) {
+            return mWriter.getMetrics();
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private TodaySummary getTodaySummary(String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int generation;
+        synchronized (mTodaySummaries) {
+            if (today != mTodaySummaryDay) {
+                mTodaySummaries.clear();
+                mTodaySummaryDay = today;
+                mTodaySummaryGeneration++;
+            }
+            // A cached null means there is no forecast for this location yet
+            if (mTodaySummaries.containsKey(locationSetting)) {
+                return mTodaySummaries.get(locationSetting);
+            }
+            generation = mTodaySummaryGeneration;
+        }
+
+        TodaySummary summary = TodaySummary.query(mOpenHelper.getReadableDatabase(),
+                locationSetting, today);
+        synchronized (mTodaySummaries) {
+            if (generation == mTodaySummaryGeneration) {
+                mTodaySummaries.put(locationSetting, summary);
+            }
+        }
+        return summary;
+    }
+
+    private void invalidateTodaySummaries() {
+        synchronized (mTodaySummaries) {
+            mTodaySummaries.clear();
+            mTodaySummaryGeneration++;
+        }
+    }
+
+    private Bundle exportSnapshot() {
+        long start = SystemClock.elapsedRealtime();
+        File snapshot = WeatherSnapshot.getSnapshotFile(getContext());
+        // Every sync and push asks for an export, but a snapshot a few hours old serves a warm
+        // start just as well, so the tables aren't rewritten for every small change
+        long age = System.currentTimeMillis() - snapshot.lastModified();
+        if (snapshot.exists() && age >= 0 && age < SNAPSHOT_MAX_AGE_MILLIS) {
+            return buildSnapshotResult(0, start);
+        }
+        int rows;
+        try {
+            rows = WeatherSnapshot.export(mOpenHelper.getReadableDatabase(), snapshot);
+            new BackupManager(getContext()).dataChanged();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to export snapshot", e);
+            rows = -1;
+        }
+        return buildSnapshotResult(rows, start);
+    }
+
+    private Bundle restoreSnapshot() {
+        long start = SystemClock.elapsedRealtime();
+        final File snapshot = WeatherSnapshot.getSnapshotFile(getContext());
+        int rows = -1;
+        if (snapshot.exists()) {
+            rows = mWriter.execute(new WeatherWriter.Batch<Integer>() {
+                @Override
+                public Integer apply(SQLiteDatabase db) {
+                    try {
+                        return WeatherSnapshot.restore(db, snapshot);
+                    } catch (IOException | android.database.SQLException e) {
+                        Log.e(LOG_TAG, "Unable to restore snapshot", e);
+                        return -1;
+                    }
+                }
+            });
+            // Either the restored rows or the emptied tables are now visible
+            invalidateTodaySummaries();
+            getContext().getContentResolver().notifyChange(WeatherContract.LocationEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+        return buildSnapshotResult(rows, start);
+    }
+
+    private static Bundle buildSnapshotResult(int rows, long start) {
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROW_COUNT, rows);
+        result.putLong(WeatherContract.EXTRA_ELAPSED_MILLIS, SystemClock.elapsedRealtime() - start);
+        return result;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes a compact binary copy of the location and weather tables, so that the
+ * forecast can be shown from the last known data after a reinstall (see
+ * {@link WeatherBackupAgent}), a schema upgrade or a cleared cache instead of waiting for the
+ * first sync.
+ *
+ * The file layout is:
+ * <pre>
+ *   int    MAGIC
+ *   int    FORMAT_VERSION
+ *   int    location row count
+ *   ...    location rows (_id, location_setting, city_name, coord_lat, coord_long)
+ *   int    weather row count
+ *   ...    weather rows (location_id, date, short_desc, weather_id, min, max,
+ *                        humidity, pressure, wind, degrees)
+ *   long   CRC32 of everything above
+ * </pre>
+ */
+public class WeatherSnapshot {
+    private static final String LOG_TAG = WeatherSnapshot.class.getSimpleName();
+
+    static final String SNAPSHOT_FILE_NAME = "weather.snapshot";
+
+    private static final int MAGIC = 0x53554e57; // "SUNW"
+    static final int FORMAT_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String SQL_INSERT_LOCATION = "INSERT INTO " + LocationEntry.TABLE_NAME +
+            " (" + join(LOCATION_COLUMNS) + ") VALUES (?,?,?,?,?)";
+
+    private static final String SQL_INSERT_WEATHER = "INSERT INTO " + WeatherEntry.TABLE_NAME +
+            " (" + join(WEATHER_COLUMNS) + ") VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+    private WeatherSnapshot() {
+    }
+
+    /**
+     * @return the location of the snapshot file for the given context
+     */
+    public static File getSnapshotFile(Context context) {
+        return new File(context.getFilesDir(), SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * Writes both tables to {@code file}.  The data is written to a temporary file first and
+     * renamed into place, so a crash half way through never leaves a truncated snapshot behind.
+     *
+     * The rows are streamed to the file as they are read, so memory use does not grow with the
+     * size of the tables.  The read runs in a non-exclusive transaction, which writers proceed
+     * past while the database uses write-ahead logging.
+     *
+     * @return the number of rows written
+     */
+    public static int export(SQLiteDatabase db, File file) throws IOException {
+        long start = System.nanoTime();
+        File tmp = new File(file.getPath() + ".tmp");
+        int rows = 0;
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE), crc));
+        boolean success = false;
+        try {
+            // Read both tables inside one transaction so that the locations and the weather rows
+            // that reference them come from the same point in time.
+            beginReadTransaction(db);
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+
+                Cursor cursor = db.query(LocationEntry.TABLE_NAME, LOCATION_COLUMNS,
+                        null, null, null, null, null);
+                try {
+                    out.writeInt(cursor.getCount());
+                    while (cursor.moveToNext()) {
+                        out.writeLong(cursor.getLong(0));
+                        out.writeUTF(cursor.getString(1));
+                        out.writeUTF(cursor.getString(2));
+                        out.writeDouble(cursor.getDouble(3));
+                        out.writeDouble(cursor.getDouble(4));
+                        rows++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                cursor = db.query(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS,
+                        null, null, null, null, null);
+                try {
+                    out.writeInt(cursor.getCount());
+                    while (cursor.moveToNext()) {
+                        out.writeLong(cursor.getLong(0));
+                        out.writeLong(cursor.getLong(1));
+                        out.writeUTF(cursor.getString(2));
+                        out.writeInt(cursor.getInt(3));
+                        out.writeDouble(cursor.getDouble(4));
+                        out.writeDouble(cursor.getDouble(5));
+                        out.writeDouble(cursor.getDouble(6));
+                        out.writeDouble(cursor.getDouble(7));
+                        out.writeDouble(cursor.getDouble(8));
+                        out.writeDouble(cursor.getDouble(9));
+                        rows++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            // The checksum covers everything written so far, so it has to be captured
+            // before it is written itself.
+            out.writeLong(crc.getValue());
+            success = true;
+        } finally {
+            out.close();
+            if (!success) {
+                tmp.delete();
+            }
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to move snapshot into place at " + file);
+        }
+        Log.d(LOG_TAG, "Exported " + rows + " rows in " +
+                (System.nanoTime() - start) / 1000000 + "ms");
+        return rows;
+    }
+
+    /**
+     * Begins a non-exclusive transaction on Honeycomb and above, where the provider's call()
+     * that exports is available.  Older devices only export from tests.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void beginReadTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    /**
+     * Replaces the contents of both tables with the rows stored in {@code file}.  The file is
+     * streamed, so memory use does not grow with the size of the snapshot, and every row is
+     * inserted inside a single transaction.
+     *
+     * If the file is truncated, of another version, fails its checksum or cannot be inserted
+     * the exception is rethrown and both tables are left empty.  The surrounding transaction is
+     * still marked successful in that case, so this is safe to call from
+     * {@link android.database.sqlite.SQLiteOpenHelper#onCreate} without undoing the schema.
+     *
+     * @return the number of rows restored
+     */
+    public static int restore(SQLiteDatabase db, File file) throws IOException {
+        long start = System.nanoTime();
+        int rows = 0;
+
+        CRC32 crc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), crc));
+        db.beginTransaction();
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a weather snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+
+            clearTables(db);
+
+            SQLiteStatement insertLocation = db.compileStatement(SQL_INSERT_LOCATION);
+            try {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    insertLocation.bindLong(1, in.readLong());
+                    insertLocation.bindString(2, in.readUTF());
+                    insertLocation.bindString(3, in.readUTF());
+                    insertLocation.bindDouble(4, in.readDouble());
+                    insertLocation.bindDouble(5, in.readDouble());
+                    insertLocation.executeInsert();
+                    rows++;
+                }
+            } finally {
+                insertLocation.close();
+            }
+
+            SQLiteStatement insertWeather = db.compileStatement(SQL_INSERT_WEATHER);
+            try {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    insertWeather.bindLong(1, in.readLong());
+                    insertWeather.bindLong(2, in.readLong());
+                    insertWeather.bindString(3, in.readUTF());
+                    insertWeather.bindLong(4, in.readInt());
+                    insertWeather.bindDouble(5, in.readDouble());
+                    insertWeather.bindDouble(6, in.readDouble());
+                    insertWeather.bindDouble(7, in.readDouble());
+                    insertWeather.bindDouble(8, in.readDouble());
+                    insertWeather.bindDouble(9, in.readDouble());
+                    insertWeather.bindDouble(10, in.readDouble());
+                    insertWeather.executeInsert();
+                    rows++;
+                }
+            } finally {
+                insertWeather.close();
+            }
+
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch in " + file);
+            }
+            LocationSearchIndex.rebuild(db);
+            db.setTransactionSuccessful();
+        } catch (IOException | SQLException e) {
+            // Never leave half a snapshot behind.  Committing the empty tables rather than
+            // rolling back keeps an enclosing onCreate() transaction intact.
+            clearTables(db);
+            db.setTransactionSuccessful();
+            throw e;
+        } finally {
+            db.endTransaction();
+            in.close();
+        }
+
+        Log.d(LOG_TAG, "Restored " + rows + " rows in " +
+                (System.nanoTime() - start) / 1000000 + "ms");
+        return rows;
+    }
+
+    private static void clearTables(SQLiteDatabase db) {
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+        db.delete(LocationEntry.TABLE_NAME, null, null);
+        db.delete(LocationSearchIndex.TABLE_NAME, null, null);
+    }
+
+    private static String join(String[] columns) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(columns[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs every mutation of the weather database on a single writer thread.
+ *
+ * Callers hand over a {@link Batch} and get a {@link Future} for its result.  Batches that pile
+ * up while a transaction is being committed are merged into the next transaction, so a burst of
+ * small writes costs one commit instead of one each.  If a merged transaction fails, its batches
+ * are retried one transaction at a time so that one bad batch can't fail its neighbours.
+ */
+class WeatherWriter {
+    private static final String LOG_TAG = WeatherWriter.class.getSimpleName();
+
+    // Upper bound on the number of batches merged into a single transaction, so that a long
+    // queue doesn't turn into one very long write lock.
+    private static final int MAX_BATCHES_PER_TRANSACTION = 64;
+
+    /**
+     * A unit of work against the writable database.  It is always run inside a transaction,
+     * which it must not end.
+     */
+    interface Batch<T> {
+        T apply(SQLiteDatabase db);
+    }
+
+    private static class Task<T> extends FutureTask<T> {
+        final Batch<T> batch;
+        T result;
+
+        Task(Batch<T> batch) {
+            super(new Callable<T>() {
+                @Override
+                public T call() {
+                    throw new IllegalStateException("Tasks are completed by the writer thread");
+                }
+            });
+            this.batch = batch;
+        }
+
+        void applyTo(SQLiteDatabase db) {
+            result = batch.apply(db);
+        }
+
+        void succeed() {
+            set(result);
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+    }
+
+    private final SQLiteOpenHelper mOpenHelper;
+    private final LinkedBlockingQueue<Task<?>> mQueue = new LinkedBlockingQueue<>();
+    private final Thread mThread;
+
+    // Metrics, guarded by this
+    private int mMaxQueueDepth;
+    private long mBatches;
+    private long mTransactions;
+    private long mTotalCommitNanos;
+    private long mMaxCommitNanos;
+
+    WeatherWriter(SQLiteOpenHelper openHelper) {
+        mOpenHelper = openHelper;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "WeatherWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queues {@code batch} for the writer thread.
+     */
+    <T> Future<T> submit(Batch<T> batch) {
+        Task<T> task = new Task<>(batch);
+        if (Thread.currentThread() == mThread) {
+            // Waiting on our own queue would deadlock, so run it right away
+            runTransaction(singleton(task));
+        } else {
+            mQueue.add(task);
+            int depth = mQueue.size();
+            synchronized (this) {
+                if (depth > mMaxQueueDepth) mMaxQueueDepth = depth;
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Queues {@code batch} and waits for it to be committed.  Runtime exceptions thrown by the
+     * batch are rethrown on the calling thread.
+     */
+    <T> T execute(Batch<T> batch) {
+        Future<T> future = submit(batch);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // The write is already queued; finish waiting so the caller sees its result
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the writer's statistics, keyed by the WeatherContract.EXTRA_* metric names.
+     */
+    synchronized Bundle getMetrics() {
+        Bundle metrics = new Bundle();
+        metrics.putInt(WeatherContract.EXTRA_QUEUE_DEPTH, mQueue.size());
+        metrics.putInt(WeatherContract.EXTRA_MAX_QUEUE_DEPTH, mMaxQueueDepth);
+        metrics.putLong(WeatherContract.EXTRA_BATCH_COUNT, mBatches);
+        metrics.putLong(WeatherContract.EXTRA_TRANSACTION_COUNT, mTransactions);
+        metrics.putLong(WeatherContract.EXTRA_AVERAGE_COMMIT_MICROS,
+                mTransactions == 0 ? 0 : mTotalCommitNanos / mTransactions / 1000);
+        metrics.putLong(WeatherContract.EXTRA_MAX_COMMIT_MICROS, mMaxCommitNanos / 1000);
+        return metrics;
+    }
+
+    private void loop() {
+        ArrayList<Task<?>> tasks = new ArrayList<>();
+        while (true) {
+            try {
+                tasks.add(mQueue.take());
+            } catch (InterruptedException e) {
+                // The writer lives as long as the process does
+                continue;
+            }
+            mQueue.drainTo(tasks, MAX_BATCHES_PER_TRANSACTION - 1);
+
+            if (!runTransaction(tasks) && tasks.size() > 1) {
+                // Find out which batch failed without letting it take the others down with it
+                for (Task<?> task : tasks) {
+                    runTransaction(singleton(task));
+                }
+            }
+            tasks.clear();
+        }
+    }
+
+    /**
+     * Applies {@code tasks} in one transaction and completes their futures if it commits.  A
+     * failing lone task has its future failed; a failing group is left for the caller to retry.
+     *
+     * @return true if the transaction committed
+     */
+    private boolean runTransaction(ArrayList<Task<?>> tasks) {
+        long start = System.nanoTime();
+        try {
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (Task<?> task : tasks) {
+                    task.applyTo(db);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            if (tasks.size() == 1) {
+                tasks.get(0).fail(e);
+            } else {
+                Log.w(LOG_TAG, "Merged transaction of " + tasks.size() + " batches failed, retrying", e);
+            }
+            return false;
+        }
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            mBatches += tasks.size();
+            mTransactions++;
+            mTotalCommitNanos += elapsed;
+            if (elapsed > mMaxCommitNanos) mMaxCommitNanos = elapsed;
+        }
+        for (Task<?> task : tasks) {
+            task.succeed();
+        }
+        return true;
+    }
+
+    private static ArrayList<Task<?>> singleton(Task<?> task) {
+        ArrayList<Task<?>> tasks = new ArrayList<>(1);
+        tasks.add(task);
+        return tasks;
+    }
+}
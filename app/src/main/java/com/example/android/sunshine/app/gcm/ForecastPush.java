@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.DataUpdateDispatcher;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Applies the forecast changes carried by a push message straight to the database, instead of
+ * syncing the whole forecast from the network.  The changes come under the "forecast" key of
+ * the message's data, next to its "location":
+ *
+ * <pre>
+ * "forecast": {
+ *   "issued": 1419120000000,
+ *   "base": 1419033600000,
+ *   "days": [
+ *     {"date": 1419120000000, "weather_id": 500, "desc": "Rain", "max": 12.5, "min": 7.1,
+ *      "humidity": 80, "pressure": 1010.2, "wind": 4.1, "deg": 210}
+ *   ]
+ * }
+ * </pre>
+ *
+ * "issued" is when the server's forecast was made, and "base" the oldest forecast that the
+ * changed days can be applied on top of, both by the server's clock.  They are only compared
+ * with the issue time of the last push applied to the location, which is kept apart from its
+ * last sync since the device's clock may differ from the server's.
+ *
+ * A client that doesn't know the location, has never synced it, or whose last applied push is
+ * older than the base syncs that location from the network instead.  A push issued no later
+ * than the last applied one is older than the data already written, and is ignored.  After a
+ * network sync there is no last applied push, and the next push is applied on top.
+ */
+class ForecastPush {
+    private static final String LOG_TAG = ForecastPush.class.getSimpleName();
+
+    static final String KEY_FORECAST = "forecast";
+
+    private static final String KEY_ISSUED = "issued";
+    private static final String KEY_BASE = "base";
+    private static final String KEY_DAYS = "days";
+    private static final String KEY_DATE = "date";
+    private static final String KEY_WEATHER_ID = "weather_id";
+    private static final String KEY_DESCRIPTION = "desc";
+    private static final String KEY_MAX = "max";
+    private static final String KEY_MIN = "min";
+    private static final String KEY_HUMIDITY = "humidity";
+    private static final String KEY_PRESSURE = "pressure";
+    private static final String KEY_WIND = "wind";
+    private static final String KEY_DEGREES = "deg";
+
+    private static final String[] LOCATION_PROJECTION = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LAST_SYNC,
+            LocationEntry.COLUMN_LAST_PUSH_ISSUED
+    };
+    // these indices must match the projection
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LAST_SYNC = 1;
+    private static final int INDEX_LAST_PUSH_ISSUED = 2;
+
+    /**
+     * Where a push's outcome goes: a sync request when it can't be applied, and the change
+     * otherwise.  Tests stand in for it, so that they don't reach the network or the widgets.
+     */
+    interface Callbacks {
+        void requestSync(Context context, String locationSetting);
+
+        void dataChanged(Context context, String locationSetting, long firstDate, long lastDate);
+    }
+
+    private static final Callbacks DEFAULT_CALLBACKS = new Callbacks() {
+        @Override
+        public void requestSync(Context context, String locationSetting) {
+            SunshineSyncAdapter.syncLocationImmediately(context, locationSetting);
+        }
+
+        @Override
+        public void dataChanged(Context context, String locationSetting, long firstDate,
+                                long lastDate) {
+            DataUpdateDispatcher.getInstance(context).dataChanged(locationSetting,
+                    firstDate, lastDate);
+        }
+    };
+
+    private ForecastPush() {
+    }
+
+    /**
+     * Writes the changed days of {@code locationSetting} to the database, or requests a sync of
+     * that location if they can't be applied.
+     *
+     * @return true if the days were written
+     */
+    static boolean apply(Context context, String locationSetting, JSONObject forecast) {
+        return apply(context, locationSetting, forecast, DEFAULT_CALLBACKS);
+    }
+
+    static boolean apply(Context context, String locationSetting, JSONObject forecast,
+                         Callbacks callbacks) {
+        long locationId = -1;
+        long lastSync = 0;
+        long lastPushIssued = 0;
+        Cursor cursor = context.getContentResolver().query(LocationEntry.CONTENT_URI,
+                LOCATION_PROJECTION,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[] {locationSetting},
+                null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    locationId = cursor.getLong(INDEX_LOCATION_ID);
+                    lastSync = cursor.getLong(INDEX_LAST_SYNC);
+                    lastPushIssued = cursor.getLong(INDEX_LAST_PUSH_ISSUED);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        try {
+            long issued = forecast.getLong(KEY_ISSUED);
+            // Pushes can arrive out of order, and an older one must not replace newer data
+            if (lastPushIssued != 0 && issued <= lastPushIssued) {
+                Log.d(LOG_TAG, "Skipping a push for " + locationSetting +
+                        " older than the last one applied");
+                return false;
+            }
+            if (locationId == -1 || lastSync == 0 ||
+                    (lastPushIssued != 0 && lastPushIssued < forecast.getLong(KEY_BASE))) {
+                Log.d(LOG_TAG, "Too far behind to apply the push for " + locationSetting +
+                        ", syncing it instead");
+                callbacks.requestSync(context, locationSetting);
+                return false;
+            }
+
+            JSONArray days = forecast.getJSONArray(KEY_DAYS);
+            if (days.length() == 0) {
+                return false;
+            }
+            ContentValues[] values = new ContentValues[days.length()];
+            long firstDate = Long.MAX_VALUE;
+            long lastDate = Long.MIN_VALUE;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = parseDay(days.getJSONObject(i), locationId);
+                long date = values[i].getAsLong(WeatherEntry.COLUMN_DATE);
+                firstDate = Math.min(firstDate, date);
+                lastDate = Math.max(lastDate, date);
+            }
+
+            // The days replace the ones with the same dates, in a single transaction
+            context.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+            updateLastPushIssued(context, locationId, issued);
+            exportSnapshot(context);
+            callbacks.dataChanged(context, locationSetting, firstDate, lastDate);
+            Log.d(LOG_TAG, "Applied " + values.length + " pushed days for " + locationSetting);
+            return true;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Invalid forecast push for " + locationSetting + ", syncing it instead",
+                    e);
+            callbacks.requestSync(context, locationSetting);
+            return false;
+        }
+    }
+
+    private static ContentValues parseDay(JSONObject day, long locationId) throws JSONException {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        values.put(WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(day.getLong(KEY_DATE)));
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, day.getInt(KEY_WEATHER_ID));
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, day.getString(KEY_DESCRIPTION));
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, day.getDouble(KEY_MAX));
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, day.getDouble(KEY_MIN));
+        values.put(WeatherEntry.COLUMN_HUMIDITY, day.getDouble(KEY_HUMIDITY));
+        values.put(WeatherEntry.COLUMN_PRESSURE, day.getDouble(KEY_PRESSURE));
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, day.getDouble(KEY_WIND));
+        values.put(WeatherEntry.COLUMN_DEGREES, day.getDouble(KEY_DEGREES));
+        return values;
+    }
+
+    private static void updateLastPushIssued(Context context, long locationId, long issued) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LAST_PUSH_ISSUED, issued);
+        context.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry._ID + " = ?",
+                new String[] {Long.toString(locationId)});
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void exportSnapshot(Context context) {
+        // ContentResolver.call() is only available on Honeycomb and above
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            context.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_EXPORT_SNAPSHOT, null, null);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.Context;
+
+import com.google.android.gms.gcm.GcmPubSub;
+
+import java.io.IOException;
+
+/**
+ * Subscribes to topics through Google Play services.
+ */
+class GcmTopicRegistrar implements TopicRegistrar {
+    private final GcmPubSub mPubSub;
+
+    GcmTopicRegistrar(Context context) {
+        mPubSub = GcmPubSub.getInstance(context);
+    }
+
+    @Override
+    public void subscribe(String token, String topic) throws IOException {
+        mPubSub.subscribe(token, topic, null);
+    }
+
+    @Override
+    public void unsubscribe(String token, String topic) throws IOException {
+        mPubSub.unsubscribe(token, topic);
+    }
+}
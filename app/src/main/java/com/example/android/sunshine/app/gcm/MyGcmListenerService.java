@@ -23,12 +23,14 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.StartupTrace;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -41,6 +43,8 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
+    // When the server sent the message, in milliseconds since the epoch
+    private static final String EXTRA_SENT = "sent";
 
     public static final int NOTIFICATION_ID = 1;
 
@@ -53,6 +57,8 @@ public class MyGcmListenerService extends GcmListenerService {
      */
     @Override
     public void onMessageReceived(String from, Bundle data) {
+        long receivedAt = SystemClock.elapsedRealtime();
+        StartupTrace.markBackgroundStart("a push");
         // Time to unparcel the bundle!
         if (!data.isEmpty()) {
             // TODO: gcm_default sender ID comes from the API console
@@ -60,16 +66,25 @@ public class MyGcmListenerService extends GcmListenerService {
             if (senderId.length() == 0) {
                 Toast.makeText(this, "SenderID string needs to be set", Toast.LENGTH_LONG).show();
             }
-            // Not a bad idea to check that the message is coming from your server.
-            if ((senderId).equals(from)) {
+            // Not a bad idea to check that the message is coming from your server.  Messages
+            // to the location topics we subscribed to come from the topic instead.
+            if ((senderId).equals(from) || from.startsWith(TopicSubscriptionManager.TOPIC_PREFIX)) {
                 // Process message and then post a notification of the received message.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
                     String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
+                    // Forecast changes are written straight to the database; see ForecastPush
+                    JSONObject forecast = jsonObject.optJSONObject(ForecastPush.KEY_FORECAST);
+                    if (forecast != null && ForecastPush.apply(this, location, forecast)) {
+                        PushLatency.onPushApplied(receivedAt, jsonObject.optLong(EXTRA_SENT));
+                    }
+                    // Not every message is an alert
+                    String weather = jsonObject.optString(EXTRA_WEATHER, null);
+                    if (weather != null) {
+                        String alert = String.format(getString(R.string.gcm_weather_alert),
+                                weather, location);
+                        sendNotification(alert);
+                    }
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures how long the forecast of a push message takes to reach the widgets.  The widgets
+ * report each update, and the ones following an applied push are logged with the time since
+ * the push was received, and since the server sent it when it said.
+ */
+public final class PushLatency {
+    private static final String LOG_TAG = PushLatency.class.getSimpleName();
+
+    // Updates later than this are not the push's doing
+    private static final long MAX_LATENCY_MILLIS = 60 * 1000;
+
+    // When the last applied push was received, in elapsed realtime, or 0
+    private static volatile long sReceivedAt;
+    // When the server sent it, in wall time, or 0 if it didn't say
+    private static volatile long sSentAt;
+
+    private PushLatency() {
+    }
+
+    static void onPushApplied(long receivedAt, long sentAt) {
+        sSentAt = sentAt;
+        sReceivedAt = receivedAt;
+    }
+
+    /**
+     * Called when a widget showed new data.
+     *
+     * @param widget the kind of widget, for the log
+     */
+    public static void onWidgetUpdated(String widget) {
+        long receivedAt = sReceivedAt;
+        if (receivedAt == 0) {
+            return;
+        }
+        long latency = SystemClock.elapsedRealtime() - receivedAt;
+        if (latency > MAX_LATENCY_MILLIS) {
+            sReceivedAt = 0;
+            return;
+        }
+        long sentAt = sSentAt;
+        Log.d(LOG_TAG, "Push to " + widget + " update: " + latency + "ms" + (sentAt == 0 ? "" :
+                ", " + (System.currentTimeMillis() - sentAt) + "ms since the server sent it"));
+    }
+}
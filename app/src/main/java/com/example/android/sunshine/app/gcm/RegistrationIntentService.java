@@ -15,9 +15,13 @@
  */
 package com.example.android.sunshine.app.gcm;
 
+import android.app.AlarmManager;
 import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.widget.Toast;
@@ -28,6 +32,10 @@ import com.google.android.gms.gcm.GoogleCloudMessaging;
 import com.google.android.gms.iid.InstanceID;
 
 
+/**
+ * Fetches this device's registration token, and keeps its location topics up to date; see
+ * {@link TopicSubscriptionManager}.  A failed update is retried later, backing off each time.
+ */
 public class RegistrationIntentService extends IntentService {
     private static final String TAG = "RegIntentService";
 
@@ -35,31 +43,50 @@ public class RegistrationIntentService extends IntentService {
         super(TAG);
     }
 
+    /**
+     * Brings the location topics in line with the location table, for instance after a sync.
+     * Does nothing until the app has registered with GCM.
+     */
+    public static void updateTopics(Context context) {
+        if (PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(MainActivity.SENT_TOKEN_TO_SERVER, false)) {
+            context.startService(new Intent(context, RegistrationIntentService.class));
+        }
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
 
+        // Intents are handled one at a time on this service's thread, so simultaneous refresh
+        // operations are already processed sequentially.
         try {
-            // In the (unlikely) event that multiple refresh operations occur simultaneously,
-            // ensure that they are processed sequentially.
-            synchronized (TAG) {
-                // Initially this call goes out to the network to retrieve the token, subsequent calls
-                // are local.
+            // TODO: gcm_default sender ID comes from the API console
+            String senderId = getString(R.string.gcm_defaultSenderId);
+            if ( senderId.length() != 0 ) {
+                // Initially this call goes out to the network to retrieve the token, subsequent
+                // calls are local.
                 InstanceID instanceID = InstanceID.getInstance(this);
+                String token = instanceID.getToken(senderId,
+                        GoogleCloudMessaging.INSTANCE_ID_SCOPE, null);
 
-                // TODO: gcm_default sender ID comes from the API console
-                String senderId = getString(R.string.gcm_defaultSenderId);
-                if ( senderId.length() != 0 ) {
-                    String token = instanceID.getToken(senderId,
-                            GoogleCloudMessaging.INSTANCE_ID_SCOPE, null);
+                TopicSubscriptionManager topics =
+                        new TopicSubscriptionManager(this, new GcmTopicRegistrar(this));
+                // This runs after every sync, but the server only needs to hear of a new token
+                if (!token.equals(topics.getToken())) {
                     sendRegistrationToServer(token);
                 }
-
-                // You should store a boolean that indicates whether the generated token has been
-                // sent to your server. If the boolean is false, send the token to your server,
-                // otherwise your server should have already received the token.
-                sharedPreferences.edit().putBoolean(MainActivity.SENT_TOKEN_TO_SERVER, true).apply();
+                if (topics.update(token)) {
+                    cancelRetry();
+                } else {
+                    scheduleRetry(topics.getBackoffMillis());
+                }
             }
+
+            // You should store a boolean that indicates whether the generated token has been
+            // sent to your server. If the boolean is false, send the token to your server,
+            // otherwise your server should have already received the token.
+            sharedPreferences.edit().putBoolean(MainActivity.SENT_TOKEN_TO_SERVER, true).apply();
         } catch (Exception e) {
             Log.d(TAG, "Failed to complete token refresh", e);
 
@@ -69,6 +96,33 @@ public class RegistrationIntentService extends IntentService {
         }
     }
 
+    /**
+     * Starts this service again after {@code delayMillis}.  Later failures replace the alarm, so
+     * only one retry is ever pending.
+     */
+    private void scheduleRetry(long delayMillis) {
+        PendingIntent retry = PendingIntent.getService(this, 0,
+                new Intent(this, RegistrationIntentService.class),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + delayMillis, retry);
+    }
+
+    /**
+     * Cancels the pending retry, if there is one, once an update has succeeded without it.
+     */
+    private void cancelRetry() {
+        PendingIntent retry = PendingIntent.getService(this, 0,
+                new Intent(this, RegistrationIntentService.class),
+                PendingIntent.FLAG_NO_CREATE);
+        if (retry != null) {
+            AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(retry);
+            retry.cancel();
+        }
+    }
+
     /**
      * Normally, you would want to persist the registration to third-party servers. Because we do
      * not have a server, and are faking it with a website, you'll want to log the token instead.
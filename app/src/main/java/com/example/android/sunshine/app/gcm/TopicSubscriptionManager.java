@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps this device subscribed to one GCM topic per location it follows, so that the server can
+ * push a forecast change to the devices showing that location only.
+ *
+ * The locations followed are those in the location table that were synced recently; a location
+ * that is no longer synced is unsubscribed from once it goes stale.  {@link #update(String)}
+ * applies every change since the last update at once, and when the endpoint fails, keeps what
+ * was done and tells its caller how long to back off before trying again.
+ */
+public class TopicSubscriptionManager {
+    private static final String LOG_TAG = TopicSubscriptionManager.class.getSimpleName();
+
+    public static final String TOPIC_PREFIX = "/topics/location-";
+
+    // Locations not synced for this long are no longer followed
+    static final long STALE_AFTER_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    static final long MIN_BACKOFF_MILLIS = 30 * 1000;
+    static final long MAX_BACKOFF_MILLIS = 6L * 60 * 60 * 1000;
+
+    // The subscribed topics, as keys, along with the token they were made for
+    private static final String PREFS = "gcm_topics";
+    private static final String KEY_TOKEN = "token";
+    private static final String KEY_FAILURES = "failures";
+
+    private final Context mContext;
+    private final TopicRegistrar mRegistrar;
+    private final SharedPreferences mPrefs;
+
+    public TopicSubscriptionManager(Context context, TopicRegistrar registrar) {
+        mContext = context;
+        mRegistrar = registrar;
+        mPrefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the topic of a location setting.  Topic names only allow a few characters, so the
+     * setting is URL encoded.
+     */
+    public static String getTopic(String locationSetting) {
+        try {
+            return TOPIC_PREFIX + URLEncoder.encode(locationSetting, "UTF-8")
+                    .replace("+", "%20")
+                    .replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            // Every platform supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Subscribes to the topics of the locations followed, and unsubscribes from the others.
+     * Makes network calls, so must be called off the main thread.
+     *
+     * @param token the current registration token
+     * @return true if the subscriptions are up to date, false if the caller should try again
+     * after {@link #getBackoffMillis()}
+     */
+    public boolean update(String token) {
+        // A new token starts without any subscriptions
+        if (!token.equals(mPrefs.getString(KEY_TOKEN, null))) {
+            mPrefs.edit().clear().putString(KEY_TOKEN, token).commit();
+        }
+
+        Set<String> wanted = getWantedTopics();
+        Set<String> subscribed = getSubscribedTopics();
+        int changes = 0;
+        try {
+            for (String topic : subscribed) {
+                if (wanted.contains(topic)) continue;
+                mRegistrar.unsubscribe(token, topic);
+                // Recorded as we go, so that a retry doesn't repeat it
+                mPrefs.edit().remove(topic).commit();
+                changes++;
+            }
+            for (String topic : wanted) {
+                if (subscribed.contains(topic)) continue;
+                mRegistrar.subscribe(token, topic);
+                mPrefs.edit().putBoolean(topic, true).commit();
+                changes++;
+            }
+        } catch (IOException e) {
+            int failures = mPrefs.getInt(KEY_FAILURES, 0) + 1;
+            mPrefs.edit().putInt(KEY_FAILURES, failures).commit();
+            Log.e(LOG_TAG, "Failed to update topics after " + changes + " changes, retrying in " +
+                    getBackoffMillis() + "ms", e);
+            return false;
+        }
+
+        mPrefs.edit().remove(KEY_FAILURES).commit();
+        if (changes > 0) {
+            Log.d(LOG_TAG, "Made " + changes + " topic changes, following " + wanted.size() +
+                    " locations");
+        }
+        return true;
+    }
+
+    /**
+     * Returns the registration token of the last update, or null if there was none.
+     */
+    public String getToken() {
+        return mPrefs.getString(KEY_TOKEN, null);
+    }
+
+    /**
+     * Returns how long to wait before retrying a failed update, doubling with each failure in a
+     * row.
+     */
+    public long getBackoffMillis() {
+        int failures = mPrefs.getInt(KEY_FAILURES, 0);
+        if (failures == 0) return 0;
+        long backoff = MIN_BACKOFF_MILLIS;
+        for (int i = 1; i < failures && backoff < MAX_BACKOFF_MILLIS; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Returns the topics this device is subscribed to.
+     */
+    public Set<String> getSubscribedTopics() {
+        Set<String> topics = new HashSet<>();
+        for (String key : mPrefs.getAll().keySet()) {
+            if (key.startsWith(TOPIC_PREFIX)) {
+                topics.add(key);
+            }
+        }
+        return topics;
+    }
+
+    private Set<String> getWantedTopics() {
+        Set<String> topics = new HashSet<>();
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[] {LocationEntry.COLUMN_LOCATION_SETTING},
+                LocationEntry.COLUMN_LAST_SYNC + " >= ?",
+                new String[] {Long.toString(System.currentTimeMillis() - STALE_AFTER_MILLIS)},
+                null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    topics.add(getTopic(cursor.getString(0)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return topics;
+    }
+}
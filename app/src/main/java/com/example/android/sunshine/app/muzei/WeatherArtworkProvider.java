@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves screen-sized copies of the weather photos to Muzei, so that it reads the wallpaper
+ * from us rather than downloading the multi-megabyte original from Wikimedia every time.
+ *
+ * Each photo is downloaded once, scaled to fit the screen and kept in our files.  The copies are
+ * read-only and hold nothing but those public photos, which is why the provider is exported.
+ */
+public class WeatherArtworkProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherArtworkProvider.class.getSimpleName();
+
+    private static final String ARTWORK_DIR = "muzei";
+    private static final String MIME_TYPE = "image/jpeg";
+    private static final int JPEG_QUALITY = 90;
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new SecurityException("Artwork is read-only: " + uri);
+        }
+        File file = getFileForName(getContext(), uri.getLastPathSegment());
+        if (file == null || !file.exists()) {
+            throw new FileNotFoundException("No artwork for " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection,
+                        String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(@NonNull Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Artwork is read-only");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read-only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, ContentValues values, String selection,
+                      String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read-only");
+    }
+
+    /**
+     * Returns the local copy of a weather photo, or null if it wasn't fetched yet.
+     */
+    public static Uri getCachedImageUri(Context context, String imageUrl) {
+        String name = getNameForUrl(imageUrl);
+        File file = getFileForName(context, name);
+        return file.exists() ? buildUri(context, name) : null;
+    }
+
+    /**
+     * Returns the local copy of a weather photo, downloading it first if needed.  Blocks, so must
+     * be called off the main thread.
+     *
+     * @return the copy, or null if the photo couldn't be downloaded
+     */
+    public static Uri fetchImage(Context context, String imageUrl) {
+        Uri cached = getCachedImageUri(context, imageUrl);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Fit the longer side of the screen, so the copy works in either orientation
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int size = Math.max(metrics.widthPixels, metrics.heightPixels);
+        Bitmap bitmap;
+        try {
+            bitmap = Glide.with(context.getApplicationContext())
+                    .load(imageUrl)
+                    .asBitmap()
+                    .fitCenter()
+                    // We keep our own copy, which is all that is ever read again
+                    .diskCacheStrategy(DiskCacheStrategy.NONE)
+                    .skipMemoryCache(true)
+                    .into(size, size)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving artwork from " + imageUrl, e);
+            return null;
+        }
+
+        String name = getNameForUrl(imageUrl);
+        File file = getFileForName(context, name);
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.close();
+            out = null;
+            // Renamed into place, so a reader never sees half of a file
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing artwork from " + imageUrl, e);
+            tmp.delete();
+            return null;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        Log.d(LOG_TAG, String.format(Locale.US, "Stored %dx%d artwork from %s in %d bytes",
+                bitmap.getWidth(), bitmap.getHeight(), imageUrl, file.length()));
+        return buildUri(context, name);
+    }
+
+    /**
+     * Downloads the photos of every condition that we don't have yet.  Blocks, so must be
+     * called off the main thread.
+     */
+    public static void fetchAllImages(Context context) {
+        LinkedHashSet<String> imageUrls = new LinkedHashSet<>();
+        for (int weatherId = 0; weatherId <= WeatherConditions.MAX_WEATHER_ID; weatherId++) {
+            String imageUrl = WeatherConditions.getImageUrl(weatherId);
+            if (imageUrl != null) {
+                imageUrls.add(imageUrl);
+            }
+        }
+        for (String imageUrl : imageUrls) {
+            fetchImage(context, imageUrl);
+        }
+    }
+
+    private static Uri buildUri(Context context, String name) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(context.getString(R.string.muzei_artwork_authority))
+                .appendPath(name)
+                .build();
+    }
+
+    private static String getNameForUrl(String imageUrl) {
+        return Integer.toHexString(imageUrl.hashCode()) + ".jpg";
+    }
+
+    private static File getFileForName(Context context, String name) {
+        // Only the plain names we hand out, never a path
+        if (name == null || name.indexOf('/') >= 0 || name.startsWith(".")) {
+            return null;
+        }
+        File dir = new File(context.getFilesDir(), ARTWORK_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + dir);
+        }
+        return new File(dir, name);
+    }
+}
@@ -16,12 +16,16 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
+import android.net.ConnectivityManager;
 import android.net.Uri;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.TodaySummary;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.DataUpdateDispatcher;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
@@ -30,13 +34,7 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -46,7 +44,9 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     protected void onHandleIntent(Intent intent) {
         super.onHandleIntent(intent);
         boolean dataUpdated = intent != null &&
-                SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction());
+                SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction()) &&
+                DataUpdateDispatcher.affects(intent, Utility.getPreferredLocation(this),
+                        WeatherContract.normalizeDate(System.currentTimeMillis()));
         if (dataUpdated && isEnabled()) {
             onUpdate(UPDATE_REASON_OTHER);
         }
@@ -55,25 +55,37 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        TodaySummary today = TodaySummary.load(this, location);
+        if (today != null) {
+            String imageUrl = Utility.getImageUrlForWeatherCondition(today.weatherId);
             // Only publish a new wallpaper if we have a valid image
             if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+                // Muzei reads our screen-sized copy when we have one, instead of the original
+                Uri imageUri = WeatherArtworkProvider.fetchImage(this, imageUrl);
+                if (imageUri == null) {
+                    imageUri = Uri.parse(imageUrl);
+                }
+                // Muzei downloads the image again on every publish, even an unchanged one
+                String token = imageUri + "|" + today.description + "|" + location;
+                Artwork current = getCurrentArtwork();
+                if (current != null && token.equals(current.getToken())) {
+                    Log.d(LOG_TAG, "Artwork unchanged, not publishing");
+                } else {
+                    publishArtwork(new Artwork.Builder()
+                            .imageUri(imageUri)
+                            .title(today.description)
+                            .byline(location)
+                            .token(token)
+                            .viewIntent(new Intent(this, MainActivity.class))
+                            .build());
+                }
             }
         }
-        cursor.close();
+
+        // The other conditions are fetched ahead of time, while that costs the user nothing
+        ConnectivityManager cm = (ConnectivityManager) getSystemService(CONNECTIVITY_SERVICE);
+        if (!ConnectivityManagerCompat.isActiveNetworkMetered(cm)) {
+            WeatherArtworkProvider.fetchAllImages(this);
+        }
     }
 }
@@ -1,15 +1,14 @@
 package com.example.android.sunshine.app.sync;
 
 import android.content.ContentResolver;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.StartupTrace;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.TodaySummary;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
@@ -38,6 +37,7 @@ public class DataRequestListener extends WearableListenerService {
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupTrace.markBackgroundStart("a wearable request");
         mGoogleApiClient = Utility.getGoogleApiClient(getApplicationContext());
         mGoogleApiClient.connect();
     }
@@ -48,27 +48,9 @@ public class DataRequestListener extends WearableListenerService {
         super.onDestroy();
     }
 
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-    };
-
-    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
-    // must change.
-    static final int COL_WEATHER_MAX_TEMP = 2;
-    static final int COL_WEATHER_MIN_TEMP = 3;
-    static final int COL_WEATHER_CONDITION_ID = 4;
-
-
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
         String locationSetting = Utility.getPreferredLocation(getApplicationContext());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                .buildWeatherLocationWithStartDate(locationSetting, System.currentTimeMillis());
 
         long timeStamp = 0;
         if(messageEvent.getData() != null) {
@@ -78,15 +60,11 @@ public class DataRequestListener extends WearableListenerService {
             }
         }
 
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null, null, sortOrder);
-
-        if(cursor != null && cursor.moveToFirst()) {
-            int high = (int) cursor.getDouble(COL_WEATHER_MAX_TEMP);
-            int low = (int) cursor.getDouble(COL_WEATHER_MIN_TEMP);
-            int weatherId = cursor.getInt(COL_WEATHER_CONDITION_ID);
+        TodaySummary today = TodaySummary.load(getApplicationContext(), locationSetting);
 
+        if(today != null) {
             Log.d(TAG, "Data exists. Start sending data to wearable.");
-            sendDataToWearable(mGoogleApiClient, high, low, weatherId, timeStamp);
+            sendDataToWearable(mGoogleApiClient, (int) today.high, (int) today.low, today.weatherId, timeStamp);
         } else {
             Log.d(TAG, "Data do not exist. Request sync from ContentResolver.");
             Bundle settingsBundle = new Bundle();
@@ -96,8 +74,6 @@ public class DataRequestListener extends WearableListenerService {
             ContentResolver.requestSync(SunshineSyncAdapter.getSyncAccount(getApplicationContext()),
                     getString(R.string.content_authority), settingsBundle);
         }
-
-        if(cursor != null) cursor.close();
     }
 
     public static void sendDataToWearable(GoogleApiClient client, int high, int low, int weatherId, long timeStamp) {
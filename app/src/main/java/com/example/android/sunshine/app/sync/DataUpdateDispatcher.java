@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+
+import java.util.ArrayList;
+
+/**
+ * Tells the widgets and Muzei that the forecast changed, once per burst of changes.
+ *
+ * Every change restarts a short window, and {@link SunshineSyncAdapter#ACTION_DATA_UPDATED} goes
+ * out when the window passes without another one, or at the latest a few windows after the first.
+ * The update carries what changed across the burst, so that consumers showing other locations
+ * or days can ignore it; see {@link #affects(Intent, String, long)}.
+ */
+public class DataUpdateDispatcher {
+
+    /**
+     * String array extra: the location settings whose forecast changed.
+     */
+    public static final String EXTRA_LOCATIONS = "locations";
+    /**
+     * Long extras: the first and last dates that changed.
+     */
+    public static final String EXTRA_FIRST_DATE = "first_date";
+    public static final String EXTRA_LAST_DATE = "last_date";
+
+    // However busy the changes, consumers hear about them after this many windows
+    private static final int MAX_WINDOWS = 4;
+
+    private static DataUpdateDispatcher sInstance;
+
+    private final Context mContext;
+    private final long mWindowMillis;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // The pending changes, guarded by this
+    private final ArrayList<String> mLocations = new ArrayList<>();
+    private long mFirstDate = Long.MAX_VALUE;
+    private long mLastDate = Long.MIN_VALUE;
+    private long mFirstChangeTime;
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    DataUpdateDispatcher(Context context, long windowMillis) {
+        mContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        mWindowMillis = windowMillis;
+    }
+
+    public static synchronized DataUpdateDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DataUpdateDispatcher(context,
+                    context.getResources().getInteger(R.integer.data_update_window_millis));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Records that the forecast of {@code locationSetting} changed between {@code firstDate} and
+     * {@code lastDate}, and schedules the update.  Can be called from any thread.
+     */
+    public synchronized void dataChanged(String locationSetting, long firstDate, long lastDate) {
+        long now = SystemClock.uptimeMillis();
+        if (mLocations.isEmpty()) {
+            mFirstChangeTime = now;
+        }
+        if (!mLocations.contains(locationSetting)) {
+            mLocations.add(locationSetting);
+        }
+        mFirstDate = Math.min(mFirstDate, firstDate);
+        mLastDate = Math.max(mLastDate, lastDate);
+
+        mHandler.removeCallbacks(mDispatch);
+        long dispatchTime = Math.min(now + mWindowMillis,
+                mFirstChangeTime + MAX_WINDOWS * mWindowMillis);
+        mHandler.postAtTime(mDispatch, dispatchTime);
+    }
+
+    private void dispatch() {
+        Intent dataUpdatedIntent;
+        synchronized (this) {
+            if (mLocations.isEmpty()) return;
+            dataUpdatedIntent = new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                    .putExtra(EXTRA_LOCATIONS, mLocations.toArray(new String[mLocations.size()]))
+                    .putExtra(EXTRA_FIRST_DATE, mFirstDate)
+                    .putExtra(EXTRA_LAST_DATE, mLastDate);
+            mLocations.clear();
+            mFirstDate = Long.MAX_VALUE;
+            mLastDate = Long.MIN_VALUE;
+        }
+
+        // Setting the package ensures that only components in our app will receive the broadcast
+        mContext.sendBroadcast(new Intent(dataUpdatedIntent).setPackage(mContext.getPackageName()));
+
+        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
+        // Muzei background on lower API level devices
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            mContext.startService(new Intent(dataUpdatedIntent)
+                    .setClass(mContext, WeatherMuzeiSource.class));
+        }
+    }
+
+    /**
+     * Whether a data update concerns a consumer showing {@code locationSetting} from
+     * {@code fromDate} on.  Updates without a change summary concern everyone.
+     */
+    public static boolean affects(Intent intent, String locationSetting, long fromDate) {
+        String[] locations = intent.getStringArrayExtra(EXTRA_LOCATIONS);
+        if (locations == null) return true;
+        if (intent.getLongExtra(EXTRA_LAST_DATE, Long.MAX_VALUE) < fromDate) return false;
+        for (String location : locations) {
+            if (location.equals(locationSetting)) return true;
+        }
+        return false;
+    }
+}
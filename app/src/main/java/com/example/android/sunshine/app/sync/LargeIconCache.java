@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Notification large icons, rendered once and kept on disk, so that posting a notification
+ * only has to decode a small file.
+ *
+ * Icons are keyed by a digest of the art they were rendered from and their size, and the least
+ * recently used ones are deleted beyond {@link #MAX_ICONS}.
+ */
+class LargeIconCache {
+    private static final String LOG_TAG = LargeIconCache.class.getSimpleName();
+
+    private static final String ICON_DIR = "notification_icons";
+    // A few art packs' worth of conditions, at a couple of sizes
+    static final int MAX_ICONS = 32;
+
+    private final File mDir;
+
+    LargeIconCache(Context context) {
+        mDir = new File(context.getCacheDir(), ICON_DIR);
+    }
+
+    /**
+     * Returns the name of the icon rendered from {@code art} at the given size.
+     *
+     * @param art the art pack URL or resource the icon is rendered from
+     */
+    static String getKey(String art, int width, int height) {
+        return String.format(Locale.US, "%s_%dx%d.png", md5Hex(art), width, height);
+    }
+
+    private static String md5Hex(String s) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has MD5
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(s.getBytes(Charset.forName("UTF-8")));
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Whether an icon is stored under {@code key}, without decoding it.
+     */
+    synchronized boolean contains(String key) {
+        return new File(mDir, key).exists();
+    }
+
+    /**
+     * Returns the icon stored under {@code key}, or null.
+     */
+    synchronized Bitmap get(String key) {
+        File file = new File(mDir, key);
+        if (!file.exists()) {
+            return null;
+        }
+        Bitmap icon = BitmapFactory.decodeFile(file.getPath());
+        if (icon == null) {
+            // Unreadable, so render it again next time
+            file.delete();
+            return null;
+        }
+        // Marks it as recently used
+        file.setLastModified(System.currentTimeMillis());
+        return icon;
+    }
+
+    synchronized void put(String key, Bitmap icon) {
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + mDir);
+            return;
+        }
+        File file = new File(mDir, key);
+        File tmp = new File(mDir, key + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing large icon " + key, e);
+            tmp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        File[] files = mDir.listFiles();
+        if (files == null || files.length <= MAX_ICONS) {
+            return;
+        }
+        // Oldest first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_ICONS; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -2,9 +2,7 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
+import android.annotation.TargetApi;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.BroadcastReceiver;
 import android.content.ContentProviderClient;
@@ -12,14 +10,12 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
-import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -27,19 +23,16 @@ import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
-import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.gcm.RegistrationIntentService;
+import com.example.android.sunshine.app.widget.WidgetLocations;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -63,33 +56,34 @@ import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
 
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
+    /**
+     * String sync extra: sync only this location setting.
+     */
+    public static final String EXTRA_LOCATION = "location";
     // Interval at which to sync with the weather, in seconds.
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
-    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
-    private static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    private static final String[] NEARBY_LOCATION_PROJECTION = new String[] {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_LAST_SYNC
     };
 
     // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_NEARBY_ID = 0;
+    private static final int INDEX_NEARBY_SETTING = 1;
+    private static final int INDEX_NEARBY_CITY_NAME = 2;
+    private static final int INDEX_NEARBY_LAST_SYNC = 3;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -101,8 +95,24 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    private static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
     private final GoogleApiClient mGoogleApiClient;
 
+    // False while syncing a location that only a widget shows
+    private boolean mSyncingPreferredLocation = true;
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
 
@@ -112,8 +122,21 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
-        Log.d(LOG_TAG, "Starting sync");
+        String location = extras.getString(EXTRA_LOCATION);
+        if (location == null) {
+            Log.d(LOG_TAG, "Starting sync");
+            syncPreferredLocation();
+            syncWidgetLocations();
+        } else if (location.equals(Utility.getPreferredLocation(getContext()))) {
+            Log.d(LOG_TAG, "Starting sync of the preferred location");
+            syncPreferredLocation();
+        } else {
+            Log.d(LOG_TAG, "Starting sync of " + location);
+            syncOtherLocation(location);
+        }
+    }
 
+    private void syncPreferredLocation() {
         // We no longer need just the location String, but also potentially the latitude and
         // longitude, in case we are syncing based on a new Place Picker API result.
         Context context = getContext();
@@ -121,32 +144,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
         String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        // A Place Picker result a short walk away from a location we synced recently doesn't
+        // need another round trip to the server.
+        if (Utility.isLocationLatLonAvailable(context) && reuseNearbyForecast(locationQuery,
+                Utility.getLocationLatitude(context), Utility.getLocationLongitude(context))) {
+            Log.d(LOG_TAG, "Reused the forecast of a nearby cached location");
+            return;
+        }
 
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
             Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
 
             // Instead of always building the query based off of the location string, we want to
@@ -162,6 +168,72 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
             }
 
+            String forecastJsonStr = fetchForecastJson(uriBuilder);
+            if (forecastJsonStr == null) {
+                // Stream was empty.  No point in parsing.
+                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                return;
+            }
+            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            e.printStackTrace();
+            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        }
+    }
+
+    /**
+     * Refreshes the other locations that widgets were set to show.  These don't report a
+     * location status or reach the wearable, which both follow the app's own location.
+     */
+    private void syncWidgetLocations() {
+        Context context = getContext();
+        String preferredLocation = Utility.getPreferredLocation(context);
+        for (String location : WidgetLocations.getConfiguredLocations(context)) {
+            if (location.equals(preferredLocation)) continue;
+            syncOtherLocation(location);
+        }
+    }
+
+    /**
+     * Refreshes a location other than the preferred one, without reporting its status.
+     */
+    private void syncOtherLocation(String location) {
+        mSyncingPreferredLocation = false;
+        try {
+            String forecastJsonStr = fetchForecastJson(Uri.parse(FORECAST_BASE_URL).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM, location));
+            if (forecastJsonStr != null) {
+                getWeatherDataFromJson(forecastJsonStr, location);
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(LOG_TAG, "Error syncing location " + location, e);
+        } finally {
+            mSyncingPreferredLocation = true;
+        }
+    }
+
+    /**
+     * Requests the forecast for a location query from OpenWeatherMap.
+     *
+     * @return the response, or null if it was empty
+     */
+    private String fetchForecastJson(Uri.Builder uriBuilder) throws IOException {
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+
+        String format = "json";
+        String units = "metric";
+        int numDays = 14;
+
+        try {
             Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
                     .appendQueryParameter(UNITS_PARAM, units)
                     .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
@@ -180,7 +252,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             StringBuilder buffer = new StringBuilder();
             if (inputStream == null) {
                 // Nothing to do.
-                return;
+                return null;
             }
             reader = new BufferedReader(new InputStreamReader(inputStream));
 
@@ -192,22 +264,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 buffer.append(line).append("\n");
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            return buffer.length() == 0 ? null : buffer.toString();
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -279,10 +336,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     case HttpURLConnection.HTTP_OK:
                         break;
                     case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                        reportLocationStatus(LOCATION_STATUS_INVALID);
                         return;
                     default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                        reportLocationStatus(LOCATION_STATUS_SERVER_DOWN);
                         return;
                 }
             }
@@ -371,7 +428,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
                 cVVector.add(weatherValues);
 
-                if (i==0) {
+                if (i==0 && mSyncingPreferredLocation) {
                     Log.d(LOG_TAG, "Send weather data to wearable via google play service");
                     DataRequestListener.sendDataToWearable(mGoogleApiClient,(int) high, (int) low, weatherId, System.currentTimeMillis());
                 }
@@ -389,17 +446,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
                         new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
 
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+                updateLastSync(locationId, System.currentTimeMillis());
+                onForecastUpdated(locationSetting, cvArray);
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            reportLocationStatus(LOCATION_STATUS_OK);
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            reportLocationStatus(LOCATION_STATUS_SERVER_INVALID);
         }
     }
 
@@ -410,128 +466,116 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
 
-    private void updateWidgets() {
+    /**
+     * Copies the forecast of the closest cached location into {@code locationSetting}, provided
+     * that location lies within the configured radius and was synced less than a sync interval
+     * ago.
+     *
+     * @return true if a forecast was reused and no network sync is needed
+     */
+    private boolean reuseNearbyForecast(String locationSetting, double lat, double lon) {
         Context context = getContext();
-        // Setting the package ensures that only components in our app will receive the broadcast
-        Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
-                .setPackage(context.getPackageName());
-        context.sendBroadcast(dataUpdatedIntent);
+        ContentResolver resolver = context.getContentResolver();
+        int radius = context.getResources().getInteger(R.integer.nearby_location_radius_meters);
+        if (radius <= 0) return false;
+
+        Cursor nearest = resolver.query(
+                WeatherContract.LocationEntry.buildNearestLocationUri(lat, lon, radius),
+                NEARBY_LOCATION_PROJECTION, null, null, null);
+        if (nearest == null) return false;
+        long nearbyId;
+        String cityName;
+        long lastSync;
+        try {
+            if (!nearest.moveToFirst()) return false;
+            // If the closest location is the one we are asked for, a normal sync refreshes it
+            if (locationSetting.equals(nearest.getString(INDEX_NEARBY_SETTING))) return false;
+            nearbyId = nearest.getLong(INDEX_NEARBY_ID);
+            cityName = nearest.getString(INDEX_NEARBY_CITY_NAME);
+            lastSync = nearest.getLong(INDEX_NEARBY_LAST_SYNC);
+        } finally {
+            nearest.close();
+        }
+        if (System.currentTimeMillis() - lastSync > SYNC_INTERVAL * 1000L) return false;
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Cursor days = resolver.query(WeatherContract.WeatherEntry.CONTENT_URI, null,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[] {Long.toString(nearbyId), Long.toString(today)},
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (days == null) return false;
+        ContentValues[] cvArray;
+        try {
+            if (!days.moveToFirst()) return false;
+            long locationId = addLocation(locationSetting, cityName, lat, lon);
+            cvArray = new ContentValues[days.getCount()];
+            int i = 0;
+            do {
+                ContentValues values = new ContentValues();
+                DatabaseUtils.cursorRowToContentValues(days, values);
+                values.remove(WeatherContract.WeatherEntry._ID);
+                values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                cvArray[i++] = values;
+            } while (days.moveToNext());
+            resolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+            // The copy is exactly as fresh as its source
+            updateLastSync(locationId, lastSync);
+        } finally {
+            days.close();
+        }
+
+        ContentValues first = cvArray[0];
+        DataRequestListener.sendDataToWearable(mGoogleApiClient,
+                first.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP).intValue(),
+                first.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP).intValue(),
+                first.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                System.currentTimeMillis());
+        onForecastUpdated(locationSetting, cvArray);
+        setLocationStatus(context, LOCATION_STATUS_OK);
+        return true;
     }
 
-    private void updateMuzei() {
-        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
-        // Muzei background on lower API level devices
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
-            context.startService(new Intent(ACTION_DATA_UPDATED)
-                    .setClass(context, WeatherMuzeiSource.class));
+    private void updateLastSync(long locationId, long lastSync) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LAST_SYNC, lastSync);
+        // The network's forecast replaces whatever pushes were applied, so the next push is
+        // applied on top of it
+        values.put(WeatherContract.LocationEntry.COLUMN_LAST_PUSH_ISSUED, 0);
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI, values,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[] {Long.toString(locationId)});
+    }
+
+    /**
+     * Lets everything that mirrors the forecast outside of the app know that it changed.
+     *
+     * @param days the rows just written for {@code locationSetting}, in date order
+     */
+    private void onForecastUpdated(String locationSetting, ContentValues[] days) {
+        exportSnapshot();
+        // Several syncs in a row reach the widgets and Muzei as one update
+        DataUpdateDispatcher.getInstance(getContext()).dataChanged(locationSetting,
+                days[0].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                days[days.length - 1].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+        // A location synced for the first time gets its push topic
+        RegistrationIntentService.updateTopics(getContext());
+        if (mSyncingPreferredLocation) {
+            // Today's row is the first one written
+            WeatherNotificationService.notifyWeather(getContext(), days[0]);
         }
     }
 
-    private void notifyWeather() {
-        Context context = getContext();
-        //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
-
-        if ( displayNotifications ) {
-
-            String lastNotificationKey = context.getString(R.string.pref_last_notification);
-            long lastSync = prefs.getLong(lastNotificationKey, 0);
-
-            if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
-                // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor!=null && cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.apply();
-                }
-                if(cursor != null) cursor.close();
-            }
+    /**
+     * Keeps the on-disk snapshot in step with the database, so a reinstall or a rebuilt
+     * database can show this forecast straight away.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void exportSnapshot() {
+        // ContentResolver.call() is only available on Honeycomb and above
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            getContext().getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_EXPORT_SNAPSHOT, null, null);
         }
     }
 
@@ -616,6 +660,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Has the sync adapter refresh one location straight away, rather than all of them.
+     *
+     * @param locationSetting the location to sync, which need not be the preferred one
+     */
+    public static void syncLocationImmediately(Context context, String locationSetting) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putString(EXTRA_LOCATION, locationSetting);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -688,4 +746,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.apply();
     }
+
+    /**
+     * Records the status of the location being synced, unless it is one that only a widget shows.
+     */
+    private void reportLocationStatus(@LocationStatus int locationStatus) {
+        if (mSyncingPreferredLocation) {
+            setLocationStatus(getContext(), locationStatus);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.app.IntentService;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Posts the daily weather notification, off the sync thread.
+ *
+ * The forecast comes with the intent, straight from the rows the sync wrote.  Large icons come
+ * from a {@link LargeIconCache}, so the notification is usually posted without touching the
+ * network.  The icons of an art pack are rendered as soon as the pack is chosen; if one still
+ * isn't cached, the notification is posted with the built-in art first and updated once the
+ * icon has been rendered.  A condition without art is posted without a large icon.
+ */
+public class WeatherNotificationService extends IntentService {
+    private static final String LOG_TAG = WeatherNotificationService.class.getSimpleName();
+
+    private static final String EXTRA_WEATHER_ID = "weather_id";
+    private static final String EXTRA_HIGH = "high";
+    private static final String EXTRA_LOW = "low";
+    private static final String EXTRA_DESCRIPTION = "description";
+
+    private static final String ACTION_PRERENDER = "com.example.android.sunshine.app.sync.PRERENDER";
+    private static final String EXTRA_ART_PACK = "art_pack";
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
+
+    private LargeIconCache mIcons;
+
+    public WeatherNotificationService() {
+        super("WeatherNotificationService");
+    }
+
+    /**
+     * Notifies the user of today's weather, if they want to be and weren't already today.
+     *
+     * @param today the row the sync just wrote for today
+     */
+    static void notifyWeather(Context context, ContentValues today) {
+        if (!shouldNotify(context, PreferenceManager.getDefaultSharedPreferences(context))) {
+            return;
+        }
+        context.startService(new Intent(context, WeatherNotificationService.class)
+                .putExtra(EXTRA_WEATHER_ID, today.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID))
+                .putExtra(EXTRA_HIGH, today.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP))
+                .putExtra(EXTRA_LOW, today.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP))
+                .putExtra(EXTRA_DESCRIPTION, today.getAsString(WeatherEntry.COLUMN_SHORT_DESC)));
+    }
+
+    /**
+     * Renders the large icons of every condition in an art pack, so that the notification doesn't
+     * wait on the network the first time it shows each one.
+     *
+     * @param artPackFormat the art pack preference value, a URL format taking the condition name
+     */
+    public static void prerenderArtPack(Context context, String artPackFormat) {
+        if (!notificationsEnabled(context, PreferenceManager.getDefaultSharedPreferences(context))) {
+            return;
+        }
+        context.startService(new Intent(context, WeatherNotificationService.class)
+                .setAction(ACTION_PRERENDER)
+                .putExtra(EXTRA_ART_PACK, artPackFormat));
+    }
+
+    private static boolean shouldNotify(Context context, SharedPreferences prefs) {
+        //checking the last update and notify if it' the first of the day
+        long lastSync = prefs.getLong(context.getString(R.string.pref_last_notification), 0);
+        return notificationsEnabled(context, prefs) &&
+                System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS;
+    }
+
+    private static boolean notificationsEnabled(Context context, SharedPreferences prefs) {
+        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
+        return prefs.getBoolean(displayNotificationsKey,
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mIcons = new LargeIconCache(this);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent != null && ACTION_PRERENDER.equals(intent.getAction())) {
+            prerender(intent.getStringExtra(EXTRA_ART_PACK));
+            return;
+        }
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        // A second sync may have asked before the first one's notification was posted
+        if (intent == null || !shouldNotify(this, prefs)) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+
+        int weatherId = intent.getIntExtra(EXTRA_WEATHER_ID, -1);
+        double high = intent.getDoubleExtra(EXTRA_HIGH, 0);
+        double low = intent.getDoubleExtra(EXTRA_LOW, 0);
+        String desc = intent.getStringExtra(EXTRA_DESCRIPTION);
+
+        int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+        if (iconId == -1) {
+            // A condition the app has no icon for
+            iconId = R.drawable.ic_status;
+        }
+        Resources resources = getResources();
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        boolean localGraphics = Utility.usingLocalGraphics(this);
+        String artUrl = Utility.getArtUrlForWeatherCondition(this, weatherId);
+
+        int largeIconWidth = getLargeIconWidth();
+        int largeIconHeight = getLargeIconHeight();
+
+        // Retrieve the large icon, rendering only what isn't cached yet
+        boolean fromArtPack = !localGraphics && artUrl != null;
+        Bitmap largeIcon = null;
+        String iconKey = null;
+        boolean iconPending = false;
+        if (fromArtPack || artResourceId != -1) {
+            String art = fromArtPack
+                    ? artUrl
+                    : "res/" + resources.getResourceEntryName(artResourceId);
+            iconKey = LargeIconCache.getKey(art, largeIconWidth, largeIconHeight);
+            largeIcon = mIcons.get(iconKey);
+        }
+        if (iconKey != null && largeIcon == null) {
+            if (artResourceId != -1) {
+                largeIcon = decodeArt(artResourceId, largeIconWidth, largeIconHeight);
+            }
+            if (fromArtPack) {
+                iconPending = true;
+            } else if (largeIcon != null) {
+                mIcons.put(iconKey, largeIcon);
+            }
+        }
+        String title = getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(getString(R.string.format_notification),
+                desc,
+                Utility.formatTemperature(this, high),
+                Utility.formatTemperature(this, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(this)
+                        .setColor(resources.getColor(R.color.primary_light))
+                        .setSmallIcon(iconId)
+                        .setLargeIcon(largeIcon)
+                        .setContentTitle(title)
+                        .setContentText(contentText)
+                        // Updating it with the rendered icon shouldn't alert the user again
+                        .setOnlyAlertOnce(true);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(this, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(this);
+        stackBuilder.addNextIntent(resultIntent);
+        PendingIntent resultPendingIntent =
+                stackBuilder.getPendingIntent(
+                        0,
+                        PendingIntent.FLAG_UPDATE_CURRENT
+                );
+        builder.setContentIntent(resultPendingIntent);
+
+        NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, builder.build());
+        Log.d(LOG_TAG, "Posted the notification in " + (SystemClock.elapsedRealtime() - start) +
+                "ms, large icon " + (iconPending ? "pending" : (iconKey != null ? "cached" : "none")));
+
+        //refreshing last sync
+        prefs.edit()
+                .putLong(getString(R.string.pref_last_notification), System.currentTimeMillis())
+                .apply();
+
+        if (iconPending) {
+            Bitmap renderedIcon = renderArt(artUrl, largeIconWidth, largeIconHeight);
+            if (renderedIcon != null) {
+                mIcons.put(iconKey, renderedIcon);
+                notificationManager.notify(WEATHER_NOTIFICATION_ID,
+                        builder.setLargeIcon(renderedIcon).build());
+                Log.d(LOG_TAG, "Updated the notification with its icon after " +
+                        (SystemClock.elapsedRealtime() - start) + "ms");
+            }
+        }
+    }
+
+    /**
+     * Renders and caches the large icon of every condition in {@code artPackFormat} that isn't
+     * cached yet.
+     */
+    private void prerender(String artPackFormat) {
+        if (artPackFormat == null) return;
+        long start = SystemClock.elapsedRealtime();
+        int width = getLargeIconWidth();
+        int height = getLargeIconHeight();
+        int rendered = 0;
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            // The same URL SettingsSnapshot gives the notification for this condition
+            String artUrl = String.format(Locale.US, artPackFormat,
+                    WeatherConditions.getConditionSlug(condition));
+            String iconKey = LargeIconCache.getKey(artUrl, width, height);
+            if (mIcons.contains(iconKey)) continue;
+            Bitmap icon = renderArt(artUrl, width, height);
+            if (icon != null) {
+                mIcons.put(iconKey, icon);
+                rendered++;
+            }
+        }
+        Log.d(LOG_TAG, "Rendered " + rendered + " large icons in " +
+                (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    // On Honeycomb and higher devices, we can retrieve the size of the large icon
+    // Prior to that, we use a fixed size
+    @SuppressLint("InlinedApi")
+    private int getLargeIconWidth() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : getResources().getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
+
+    @SuppressLint("InlinedApi")
+    private int getLargeIconHeight() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : getResources().getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
+
+    /**
+     * Decodes the built-in art at the size of the large icon.
+     */
+    private Bitmap decodeArt(int artResourceId, int width, int height) {
+        Bitmap art = BitmapFactory.decodeResource(getResources(), artResourceId);
+        if (art == null || (art.getWidth() == width && art.getHeight() == height)) {
+            return art;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(art, width, height, true);
+        if (scaled != art) {
+            art.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Fetches the art pack's art at the size of the large icon.  Blocks on the network.
+     */
+    private Bitmap renderArt(String artUrl, int width, int height) {
+        try {
+            return Glide.with(this)
+                    .load(artUrl)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(width, height).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            return null;
+        }
+    }
+}
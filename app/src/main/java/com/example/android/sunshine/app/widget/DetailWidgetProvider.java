@@ -7,6 +7,7 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.v4.app.TaskStackBuilder;
@@ -15,6 +16,8 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.DetailActivity;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.StartupTrace;
+import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -34,9 +37,9 @@ public class DetailWidgetProvider extends AppWidgetProvider {
 
             // Set up the collection
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-                setRemoteAdapter(context, views);
+                setRemoteAdapter(context, views, appWidgetId);
             } else {
-                setRemoteAdapterV11(context, views);
+                setRemoteAdapterV11(context, views, appWidgetId);
             }
             boolean useDetailActivity = context.getResources()
                     .getBoolean(R.bool.use_detail_activity);
@@ -54,26 +57,60 @@ public class DetailWidgetProvider extends AppWidgetProvider {
         }
     }
 
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetLocations.remove(context, appWidgetIds);
+    }
+
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
+        StartupTrace.markBackgroundStart("a widget update");
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
             int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, getClass()));
-            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+            onDataUpdated(context, intent, appWidgetManager, appWidgetIds);
         }
     }
 
+    /**
+     * Tells the lists of {@code appWidgetIds} that their data changed, if the data update
+     * concerns any of them.
+     *
+     * @return true if the lists were told
+     */
+    public static boolean onDataUpdated(Context context, Intent intent,
+                                        AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        if (!WidgetLocations.affectsAny(context, intent, appWidgetIds,
+                WeatherContract.normalizeDate(System.currentTimeMillis()))) {
+            return false;
+        }
+        WidgetForecastCache.invalidate();
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+        return true;
+    }
+
+    /**
+     * Returns the intent of the service filling in the list of one widget.  Intents that only
+     * differ in their extras would share a factory, so each one carries its own data Uri.
+     */
+    private static Intent getRemoteAdapterIntent(Context context, int appWidgetId) {
+        Intent intent = new Intent(context, DetailWidgetRemoteViewsService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        intent.setData(Uri.parse(intent.toUri(Intent.URI_INTENT_SCHEME)));
+        return intent;
+    }
+
     /**
      * Sets the remote adapter used to fill in the list items
      *
      * @param views RemoteViews to set the RemoteAdapter
      */
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
-    private void setRemoteAdapter(Context context, @NonNull final RemoteViews views) {
-        views.setRemoteAdapter(R.id.widget_list,
-                new Intent(context, DetailWidgetRemoteViewsService.class));
+    private void setRemoteAdapter(Context context, @NonNull final RemoteViews views,
+                                  int appWidgetId) {
+        views.setRemoteAdapter(R.id.widget_list, getRemoteAdapterIntent(context, appWidgetId));
     }
 
     /**
@@ -82,8 +119,9 @@ public class DetailWidgetProvider extends AppWidgetProvider {
      * @param views RemoteViews to set the RemoteAdapter
      */
     @SuppressWarnings("deprecation")
-    private void setRemoteAdapterV11(Context context, @NonNull final RemoteViews views) {
-        views.setRemoteAdapter(0, R.id.widget_list,
-                new Intent(context, DetailWidgetRemoteViewsService.class));
+    private void setRemoteAdapterV11(Context context, @NonNull final RemoteViews views,
+                                     int appWidgetId) {
+        views.setRemoteAdapter(appWidgetId, R.id.widget_list,
+                getRemoteAdapterIntent(context, appWidgetId));
     }
 }
@@ -1,24 +1,23 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.appwidget.AppWidgetManager;
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Parcel;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-
-import java.util.concurrent.ExecutionException;
+import com.example.android.sunshine.app.gcm.PushLatency;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -26,96 +25,77 @@ import java.util.concurrent.ExecutionException;
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
+    // Row timings and sizes are logged when this tag is enabled; isLoggable() needs a short tag
+    private static final String TIMING_TAG = "SunshineWidgetTiming";
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
+        final int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                AppWidgetManager.INVALID_APPWIDGET_ID);
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            private WidgetForecastCache.Day[] data = null;
+            private String locationSetting;
+            private int iconSize;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                // The art is decoded at the size of the icon view, rather than at its original size
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
             }
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                // Widgets showing the same location share their query
+                locationSetting = WidgetLocations.get(DetailWidgetRemoteViewsService.this,
+                        appWidgetId);
+                data = WidgetForecastCache.get(DetailWidgetRemoteViewsService.this,
+                        locationSetting);
                 Binder.restoreCallingIdentity(identityToken);
+                PushLatency.onWidgetUpdated("detail widget");
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                data = null;
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return data == null ? 0 : data.length;
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
                 if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                        data == null || position >= data.length) {
                     return null;
                 }
+                WidgetForecastCache.Day day = data[position];
+                long start = SystemClock.elapsedRealtime();
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                int weatherId = day.weatherId;
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
                     String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                    if (weatherArtResourceUrl != null) {
+                        weatherArtImage = WidgetBitmapCache.get(DetailWidgetRemoteViewsService.this,
+                                weatherArtResourceUrl, iconSize);
                     }
                 }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                String description = day.description;
+                long dateInMillis = day.date;
                 String formattedDate = Utility.getFriendlyDayString(
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+                double maxTemp = day.high;
+                double minTemp = day.low;
                 String formattedMaxTemperature =
                         Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
                 String formattedMinTemperature =
@@ -134,16 +114,31 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
                         locationSetting,
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                if (Log.isLoggable(TIMING_TAG, Log.DEBUG)) {
+                    logRow(position, views, SystemClock.elapsedRealtime() - start);
+                }
                 return views;
             }
 
+            /**
+             * Logs how long a row took, and how large it is when sent to the launcher.
+             */
+            private void logRow(int position, RemoteViews views, long millis) {
+                Parcel parcel = Parcel.obtain();
+                try {
+                    views.writeToParcel(parcel, 0);
+                    Log.d(TIMING_TAG, "getViewAt(" + position + "): " + millis + "ms, " +
+                            parcel.dataSize() + " bytes");
+                } finally {
+                    parcel.recycle();
+                }
+            }
+
             @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
             private void setRemoteContentDescription(RemoteViews views, String description) {
                 views.setContentDescription(R.id.widget_icon, description);
@@ -161,8 +156,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                if (data != null && position < data.length)
+                    return data[position].id;
                 return position;
             }
 
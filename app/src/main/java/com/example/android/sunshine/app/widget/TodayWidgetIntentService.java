@@ -20,35 +20,50 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
+import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.TodaySummary;
+import com.example.android.sunshine.app.gcm.PushLatency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    private static final String LOG_TAG = TodayWidgetIntentService.class.getSimpleName();
+
+    /**
+     * Boolean extra: redraw every widget, even those whose content is unchanged.  Used when the
+     * host asks for an update or a widget is resized, since the host may have lost our views.
+     */
+    static final String EXTRA_FORCE = "force";
+
+    // What each widget was last sent, so that an unchanged day sends nothing
+    private static final String STATE_PREFS = "today_widget_state";
+    private static final String KEY_LAYOUT = "layout_";
+    private static final String KEY_FINGERPRINT = "fingerprint_";
+
+    private static final int[] LAYOUTS = {
+            R.layout.widget_today_small, R.layout.widget_today, R.layout.widget_today_large
     };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+
+    private PendingIntent mLaunchIntent;
+    // AppWidgetManager calls made by the current update
+    private int mBinderCalls;
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -56,50 +71,86 @@ public class TodayWidgetIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
+        boolean force = intent != null && intent.getBooleanExtra(EXTRA_FORCE, false);
+        mBinderCalls = 0;
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
-
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
+        mBinderCalls++;
+        if (appWidgetIds.length == 0) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
-            return;
+
+        // Read each location once, however many widgets show it
+        SharedPreferences state = getSharedPreferences(STATE_PREFS, MODE_PRIVATE);
+        SharedPreferences.Editor editor = state.edit();
+        Map<String, ArrayList<Integer>> groups =
+                WidgetLocations.groupByLocation(this, appWidgetIds);
+        int updated = 0;
+        for (Map.Entry<String, ArrayList<Integer>> group : groups.entrySet()) {
+            // Get today's data from the ContentProvider
+            TodaySummary today = TodaySummary.load(this, group.getKey());
+            if (today == null) {
+                continue;
+            }
+            updated += updateWidgets(appWidgetManager, state, editor, group.getValue(),
+                    today, force);
         }
+        editor.apply();
+        if (updated > 0) {
+            PushLatency.onWidgetUpdated("Today widget");
+        }
+
+        Log.d(LOG_TAG, "Updated " + updated + " of " + appWidgetIds.length + " widgets in " +
+                groups.size() + " locations with " + mBinderCalls + " AppWidgetManager calls");
+    }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
-
-        // Perform this loop procedure for each Today widget
+    /**
+     * Sends today's weather of one location to those of its widgets whose content changed.
+     *
+     * @return the number of widgets updated
+     */
+    private int updateWidgets(AppWidgetManager appWidgetManager, SharedPreferences state,
+                              SharedPreferences.Editor editor, ArrayList<Integer> appWidgetIds,
+                              TodaySummary today, boolean force) {
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(today.weatherId);
+        String description = today.description;
+        String formattedMaxTemperature = Utility.formatTemperature(this, today.high);
+        String formattedMinTemperature = Utility.formatTemperature(this, today.low);
+        String content = weatherArtResourceId + "|" + description + "|" +
+                formattedMaxTemperature + "|" + formattedMinTemperature;
+
+        // Sort the widgets whose content changed by layout
+        int[][] changedIds = new int[LAYOUTS.length][appWidgetIds.size()];
+        int[] changedCounts = new int[LAYOUTS.length];
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
+            // The layout only changes when the widget is resized, which forces a redraw
+            int layoutId = state.getInt(KEY_LAYOUT + appWidgetId, 0);
+            if (force || layoutId == 0) {
+                layoutId = getLayoutForWidth(getWidgetWidth(appWidgetManager, appWidgetId));
+                mBinderCalls++;
+                editor.putInt(KEY_LAYOUT + appWidgetId, layoutId);
+            }
+            String fingerprint = layoutId + "|" + content;
+            if (!force && fingerprint.equals(state.getString(KEY_FINGERPRINT + appWidgetId, null))) {
+                continue;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            editor.putString(KEY_FINGERPRINT + appWidgetId, fingerprint);
+            for (int i = 0; i < LAYOUTS.length; i++) {
+                if (LAYOUTS[i] == layoutId) {
+                    changedIds[i][changedCounts[i]++] = appWidgetId;
+                    break;
+                }
+            }
+        }
+
+        // Build each layout once, and send it to all of its widgets in one call
+        int updated = 0;
+        for (int i = 0; i < LAYOUTS.length; i++) {
+            if (changedCounts[i] == 0) continue;
+            RemoteViews views = new RemoteViews(getPackageName(), LAYOUTS[i]);
 
             // Add the data to the RemoteViews
             views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
@@ -112,12 +163,43 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
             // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+            if (mLaunchIntent == null) {
+                Intent launchIntent = new Intent(this, MainActivity.class);
+                mLaunchIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+            }
+            views.setOnClickPendingIntent(R.id.widget, mLaunchIntent);
+
+            // Tell the AppWidgetManager to perform an update on the app widgets
+            appWidgetManager.updateAppWidget(Arrays.copyOf(changedIds[i], changedCounts[i]), views);
+            mBinderCalls++;
+            updated += changedCounts[i];
+        }
+        return updated;
+    }
+
+    /**
+     * Forgets what was sent to widgets that were removed.
+     */
+    static void forgetWidgets(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(STATE_PREFS, MODE_PRIVATE).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(KEY_LAYOUT + appWidgetId);
+            editor.remove(KEY_FINGERPRINT + appWidgetId);
+        }
+        editor.apply();
+    }
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+    private int getLayoutForWidth(int widgetWidth) {
+        // Find the correct layout based on the widget's width
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        if (widgetWidth >= largeWidth) {
+            return R.layout.widget_today_large;
+        } else if (widgetWidth >= defaultWidth) {
+            return R.layout.widget_today;
+        } else {
+            return R.layout.widget_today_small;
         }
     }
 
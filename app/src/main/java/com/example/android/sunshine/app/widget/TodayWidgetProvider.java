@@ -17,11 +17,14 @@ package com.example.android.sunshine.app.widget;
 
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.app.StartupTrace;
+import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -34,20 +37,45 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(TodayWidgetIntentService.EXTRA_FORCE, true));
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(TodayWidgetIntentService.EXTRA_FORCE, true));
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        TodayWidgetIntentService.forgetWidgets(context, appWidgetIds);
+        WidgetLocations.remove(context, appWidgetIds);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
+        StartupTrace.markBackgroundStart("a widget update");
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            int[] appWidgetIds = AppWidgetManager.getInstance(context).getAppWidgetIds(
+                    new ComponentName(context, getClass()));
+            onDataUpdated(context, intent, appWidgetIds);
         }
     }
+
+    /**
+     * Starts a refresh of {@code appWidgetIds} if the data update concerns any of them.
+     *
+     * @return true if a refresh was started
+     */
+    public static boolean onDataUpdated(Context context, Intent intent, int[] appWidgetIds) {
+        if (!WidgetLocations.affectsAny(context, intent, appWidgetIds,
+                WeatherContract.normalizeDate(System.currentTimeMillis()))) {
+            return false;
+        }
+        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        return true;
+    }
 }
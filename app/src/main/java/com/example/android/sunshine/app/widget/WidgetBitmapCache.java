@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Weather art for the widgets, decoded at the size the widget shows it.
+ *
+ * Every bitmap set on a RemoteViews is parceled to the launcher with it, so decoding the art at
+ * its full size makes every row large and slow to send.  Rows with the same condition share one
+ * bitmap, and a few of them are kept, keyed by art URL (which names the art pack and condition)
+ * and size.
+ */
+class WidgetBitmapCache {
+    private static final String LOG_TAG = WidgetBitmapCache.class.getSimpleName();
+
+    // Plenty for one art pack's conditions at a couple of sizes
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> sBitmaps = new LruCache<String, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    };
+
+    private WidgetBitmapCache() {
+    }
+
+    /**
+     * Returns the art at {@code artUrl} fitted into a {@code size} pixel square, or null if it
+     * couldn't be loaded.  This may block on the network, so call it off the main thread.
+     */
+    static Bitmap get(Context context, String artUrl, int size) {
+        String key = artUrl + '@' + size;
+        Bitmap bitmap = sBitmaps.get(key);
+        if (bitmap != null) return bitmap;
+
+        try {
+            bitmap = Glide.with(context.getApplicationContext())
+                    .load(artUrl)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(size, size).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return null;
+        }
+        sBitmaps.put(key, bitmap);
+        return bitmap;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.EditText;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * Asks for the location a new widget shows, defaulting to the one in the settings.
+ */
+public class WidgetConfigureActivity extends AppCompatActivity {
+
+    private int mAppWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+    private EditText mLocationView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // Backing out leaves no widget behind
+        setResult(RESULT_CANCELED);
+
+        Bundle extras = getIntent().getExtras();
+        if (extras != null) {
+            mAppWidgetId = extras.getInt(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                    AppWidgetManager.INVALID_APPWIDGET_ID);
+        }
+        if (mAppWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+            finish();
+            return;
+        }
+
+        setContentView(R.layout.activity_widget_configure);
+        mLocationView = (EditText) findViewById(R.id.widget_location);
+        if (savedInstanceState == null) {
+            mLocationView.setText(Utility.getPreferredLocation(this));
+            mLocationView.setSelection(mLocationView.length());
+        }
+        findViewById(R.id.widget_add).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                addWidget();
+            }
+        });
+    }
+
+    private void addWidget() {
+        String location = mLocationView.getText().toString().trim();
+        String preferredLocation = Utility.getPreferredLocation(this);
+        if (TextUtils.isEmpty(location) || location.equals(preferredLocation)) {
+            // Nothing stored, so that the widget follows the settings
+            WidgetLocations.remove(this, new int[] {mAppWidgetId});
+        } else {
+            WidgetLocations.set(this, mAppWidgetId, location);
+            // A location other than the app's own has to be fetched before the widget can show it
+            SunshineSyncAdapter.syncImmediately(this);
+        }
+
+        // The host doesn't update a widget that has a configuration activity, so ask its
+        // provider to
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        AppWidgetProviderInfo info = appWidgetManager.getAppWidgetInfo(mAppWidgetId);
+        if (info != null) {
+            sendBroadcast(new Intent(AppWidgetManager.ACTION_APPWIDGET_UPDATE)
+                    .setComponent(info.provider)
+                    .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, new int[] {mAppWidgetId}));
+        }
+
+        setResult(RESULT_OK, new Intent().putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                mAppWidgetId));
+        finish();
+    }
+}
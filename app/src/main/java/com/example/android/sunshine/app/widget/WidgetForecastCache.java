@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.HashMap;
+
+/**
+ * The days shown by the detail widgets, by location.  Every widget's list asks for its data
+ * when the forecast changes, and the widgets showing the same location share one query.
+ *
+ * {@link #invalidate()} drops every location, and is called before the widgets are told that
+ * their data changed.
+ */
+class WidgetForecastCache {
+    private static final String LOG_TAG = WidgetForecastCache.class.getSimpleName();
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_WEATHER_DATE = 1;
+    private static final int INDEX_WEATHER_CONDITION_ID = 2;
+    private static final int INDEX_WEATHER_DESC = 3;
+    private static final int INDEX_WEATHER_MAX_TEMP = 4;
+    private static final int INDEX_WEATHER_MIN_TEMP = 5;
+
+    private static final Day[] NO_DAYS = new Day[0];
+
+    /**
+     * One day of a location's forecast.  Immutable, so widgets can share it across threads.
+     */
+    static final class Day {
+        final long id;
+        final long date;
+        final int weatherId;
+        final String description;
+        final double high;
+        final double low;
+
+        Day(Cursor cursor) {
+            id = cursor.getLong(INDEX_WEATHER_ID);
+            date = cursor.getLong(INDEX_WEATHER_DATE);
+            weatherId = cursor.getInt(INDEX_WEATHER_CONDITION_ID);
+            description = cursor.getString(INDEX_WEATHER_DESC);
+            high = cursor.getDouble(INDEX_WEATHER_MAX_TEMP);
+            low = cursor.getDouble(INDEX_WEATHER_MIN_TEMP);
+        }
+    }
+
+    private static final class Entry {
+        final int generation;
+        final long startDate;
+        final Day[] days;
+
+        Entry(int generation, long startDate, Day[] days) {
+            this.generation = generation;
+            this.startDate = startDate;
+            this.days = days;
+        }
+    }
+
+    // Guarded by WidgetForecastCache.class
+    private static final HashMap<String, Entry> sEntries = new HashMap<>();
+    private static int sGeneration;
+    private static int sQueries;
+
+    private WidgetForecastCache() {
+    }
+
+    /**
+     * Returns the days of {@code locationSetting} from today on, querying the provider only if
+     * no other widget did since the last change.  Must be called off the main thread, with the
+     * app's own calling identity.
+     */
+    static synchronized Day[] get(Context context, String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Entry entry = sEntries.get(locationSetting);
+        if (entry != null && entry.generation == sGeneration && entry.startDate == today) {
+            return entry.days;
+        }
+
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationWithStartDate(locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri,
+                FORECAST_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        Day[] days = NO_DAYS;
+        if (cursor != null) {
+            try {
+                days = new Day[cursor.getCount()];
+                for (int i = 0; cursor.moveToPosition(i); i++) {
+                    days[i] = new Day(cursor);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        sEntries.put(locationSetting, new Entry(sGeneration, today, days));
+        sQueries++;
+        Log.d(LOG_TAG, "Queried " + days.length + " days for " + locationSetting + ", " +
+                sQueries + " queries for " + sEntries.size() + " locations so far");
+        return days;
+    }
+
+    /**
+     * Makes the next read of every location query the provider again.
+     */
+    static synchronized void invalidate() {
+        sGeneration++;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.DataUpdateDispatcher;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * The location each widget shows, stored by app widget id.  A widget that wasn't given one
+ * follows the location in the settings.
+ */
+public final class WidgetLocations {
+
+    private static final String PREFS = "widget_locations";
+
+    private WidgetLocations() {
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the location setting shown by {@code appWidgetId}.
+     */
+    public static String get(Context context, int appWidgetId) {
+        String location = getPrefs(context).getString(String.valueOf(appWidgetId), null);
+        return location != null ? location : Utility.getPreferredLocation(context);
+    }
+
+    public static void set(Context context, int appWidgetId, String locationSetting) {
+        getPrefs(context).edit().putString(String.valueOf(appWidgetId), locationSetting).apply();
+    }
+
+    /**
+     * Forgets the locations of widgets that were removed.
+     */
+    static void remove(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor = getPrefs(context).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(String.valueOf(appWidgetId));
+        }
+        editor.apply();
+    }
+
+    /**
+     * Returns the widgets by the location they show, so that each location is read once.
+     */
+    static LinkedHashMap<String, ArrayList<Integer>> groupByLocation(Context context,
+                                                                     int[] appWidgetIds) {
+        LinkedHashMap<String, ArrayList<Integer>> groups = new LinkedHashMap<>();
+        for (int appWidgetId : appWidgetIds) {
+            String location = get(context, appWidgetId);
+            ArrayList<Integer> group = groups.get(location);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(location, group);
+            }
+            group.add(appWidgetId);
+        }
+        return groups;
+    }
+
+    /**
+     * Returns every location that a widget was set to show, without duplicates.
+     */
+    public static Set<String> getConfiguredLocations(Context context) {
+        Set<String> locations = new HashSet<>();
+        for (Object location : getPrefs(context).getAll().values()) {
+            if (location instanceof String) {
+                locations.add((String) location);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Returns true if a data update broadcast concerns the location of any of the widgets.
+     */
+    static boolean affectsAny(Context context, Intent intent, int[] appWidgetIds, long fromDate) {
+        for (String location : groupByLocation(context, appWidgetIds).keySet()) {
+            if (DataUpdateDispatcher.affects(intent, location, fromDate)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Arrays;
+
+/**
+ * Maps OpenWeatherMap weather condition ids to the condition Sunshine draws for them, with a
+ * table lookup instead of a chain of range checks.
+ *
+ * The handful of conditions are shared by the phone app and the watch face, which each map them
+ * to their own drawables with {@link #buildResourceTable(int[])}.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    // Conditions, in the order expected by buildResourceTable()
+    public static final int NONE = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+    public static final int CONDITION_COUNT = 8;
+
+    /**
+     * Weather ids range from 200 to 962, so every id is an index into a table of this size.
+     */
+    public static final int MAX_WEATHER_ID = 999;
+
+    // Names used in the art pack URLs, by condition
+    private static final String[] SLUGS = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    private static final String DUST_IMAGE_URL =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+
+    // Background photos, by condition
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    private static final byte[] CONDITIONS = new byte[MAX_WEATHER_ID + 1];
+    private static final String[] IMAGE_URLS_BY_ID = new String[MAX_WEATHER_ID + 1];
+
+    static {
+        Arrays.fill(CONDITIONS, (byte) NONE);
+        fill(200, 232, STORM);
+        fill(300, 321, LIGHT_RAIN);
+        fill(500, 504, RAIN);
+        fill(511, 511, SNOW);
+        fill(520, 531, RAIN);
+        fill(600, 622, SNOW);
+        fill(701, 761, FOG);
+        fill(781, 781, STORM);
+        fill(800, 800, CLEAR);
+        fill(801, 801, LIGHT_CLOUDS);
+        fill(802, 804, CLOUDS);
+
+        for (int id = 0; id <= MAX_WEATHER_ID; id++) {
+            int condition = CONDITIONS[id];
+            IMAGE_URLS_BY_ID[id] = condition == NONE ? null : IMAGE_URLS[condition];
+        }
+        // A tornado gets the storm icon, but a photo of the dust ahead of one
+        IMAGE_URLS_BY_ID[781] = DUST_IMAGE_URL;
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void fill(int firstId, int lastId, int condition) {
+        Arrays.fill(CONDITIONS, firstId, lastId + 1, (byte) condition);
+    }
+
+    /**
+     * Returns the condition drawn for {@code weatherId}, or {@link #NONE}.
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) return NONE;
+        return CONDITIONS[weatherId];
+    }
+
+    /**
+     * Returns the art pack name for {@code weatherId}, e.g. "light_rain", or null.
+     */
+    public static String getSlug(int weatherId) {
+        return getConditionSlug(getCondition(weatherId));
+    }
+
+    /**
+     * Returns the art pack name for one of the conditions, or null for {@link #NONE}.
+     */
+    public static String getConditionSlug(int condition) {
+        return condition == NONE ? null : SLUGS[condition];
+    }
+
+    /**
+     * Returns the URL of a background photo for {@code weatherId}, or null.
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) return null;
+        return IMAGE_URLS_BY_ID[weatherId];
+    }
+
+    /**
+     * Expands one resource per condition into a table indexed by weather id, for use with
+     * {@link #lookup(int[], int)}.  Ids without a condition map to -1.
+     *
+     * @param resourcesByCondition {@link #CONDITION_COUNT} resources, in condition order
+     */
+    public static int[] buildResourceTable(int[] resourcesByCondition) {
+        if (resourcesByCondition.length != CONDITION_COUNT) {
+            throw new IllegalArgumentException("Expected " + CONDITION_COUNT + " resources, got " +
+                    resourcesByCondition.length);
+        }
+        int[] table = new int[MAX_WEATHER_ID + 1];
+        for (int id = 0; id <= MAX_WEATHER_ID; id++) {
+            int condition = CONDITIONS[id];
+            table[id] = condition == NONE ? -1 : resourcesByCondition[condition];
+        }
+        return table;
+    }
+
+    /**
+     * Returns the entry of {@code table} for {@code weatherId}, or -1 if it is out of range.
+     */
+    public static int lookup(int[] table, int weatherId) {
+        if (weatherId < 0 || weatherId >= table.length) return -1;
+        return table[weatherId];
+    }
+}
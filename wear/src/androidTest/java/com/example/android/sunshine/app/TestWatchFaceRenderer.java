@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    // A square Wear screen
+    private static final int SIZE = 320;
+    // Ten minutes of interactive mode, one frame a second
+    private static final int FRAMES = 600;
+    private static final int ROUNDS = 5;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private long mStart;
+
+    // The counts seen by the last assertLayers()
+    private int mLastLayerRenders;
+    private int mLastComposites;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TimeZone timeZone = TimeZone.getTimeZone("UTC");
+        mRenderer = new WatchFaceRenderer(mContext);
+        mRenderer.setRound(false);
+        mRenderer.setTimeZone(timeZone);
+        Bitmap icon = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.ic_rain);
+        mRenderer.setWeather(21, 12, icon);
+
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+
+        // Early enough in the day that no round crosses midnight
+        Calendar start = new GregorianCalendar(timeZone);
+        start.set(2015, Calendar.JUNE, 22, 9, 0, 0);
+        mStart = start.getTimeInMillis();
+    }
+
+    // Debug's allocation counting is deprecated, but it is the only per-thread allocation count
+    // available on Wear's API levels
+    @SuppressWarnings("deprecation")
+    public void testNoAllocationsPerFrame() {
+        // The first frame formats the date and renders the layers
+        drawFrames(mStart, 1);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        drawFrames(mStart, FRAMES);
+        int allocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: Drawing " + FRAMES + " frames allocated", 0, allocs);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testAmbientNoAllocationsPerFrame() {
+        mRenderer.setAmbient(true, true);
+        drawFrames(mStart, 1);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        // Ambient mode draws once a minute
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, mStart + i * 60 * 1000L);
+        }
+        int allocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: Drawing " + FRAMES + " ambient frames allocated", 0, allocs);
+    }
+
+    public void testLayersRenderOnlyWhenInvalidated() {
+        long now = mStart;
+        drawFrames(now, 1);
+        assertLayers("the first frame", 2, 1);
+
+        drawFrames(now, FRAMES);
+        assertLayers("ticking within the day", 0, 0);
+
+        mRenderer.setWeather(23, 14, null);
+        drawFrames(now, 1);
+        assertLayers("a weather change", 1, 1);
+
+        mRenderer.setBackgroundColor(Color.DKGRAY);
+        drawFrames(now, 1);
+        assertLayers("a background color change", 0, 1);
+
+        now += 24 * 60 * 60 * 1000L;
+        drawFrames(now, 1);
+        assertLayers("a date change", 1, 1);
+
+        mRenderer.setAmbient(true, false);
+        drawFrames(now, 1);
+        assertLayers("entering ambient mode", 0, 1);
+
+        // Low-bit ambient mode drops anti-aliasing from the text of both strips
+        mRenderer.setAmbient(false, true);
+        drawFrames(now, 1);
+        assertLayers("leaving low-bit ambient mode", 2, 1);
+    }
+
+    public void testLocaleChangeIsPickedUpAtTheNextMinute() {
+        Locale original = Locale.getDefault();
+        try {
+            drawFrames(mStart, 1);
+            assertLayers("the first frame", 2, 1);
+
+            Locale.setDefault(original.equals(Locale.FRENCH) ? Locale.GERMAN : Locale.FRENCH);
+            // Within the same minute nothing is formatted again
+            drawFrames(mStart + 1000, 1);
+            assertLayers("a locale change within the minute", 0, 0);
+
+            drawFrames(mStart + 60 * 1000L, 1);
+            assertLayers("a locale change at the next minute", 1, 1);
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    public void testBenchmark() {
+        long layered = measureFrames();
+        mRenderer.setLayersEnabled(false);
+        long direct = measureFrames();
+
+        // Timings depend on the device, so they are only reported; the layer counts above are
+        // what the tests check
+        Log.i(LOG_TAG, "Layered: " + layered / 1000 + "us/frame");
+        Log.i(LOG_TAG, "Direct: " + direct / 1000 + "us/frame");
+    }
+
+    private void assertLayers(String after, int layerRenders, int composites) {
+        int renders = mRenderer.getLayerRenderCount();
+        int composited = mRenderer.getCompositeCount();
+        assertEquals("Error: Wrong number of strips rendered after " + after,
+                layerRenders, renders - mLastLayerRenders);
+        assertEquals("Error: Wrong number of composites after " + after,
+                composites, composited - mLastComposites);
+        mLastLayerRenders = renders;
+        mLastComposites = composited;
+    }
+
+    /**
+     * Returns the median time to draw a frame, in nanoseconds.
+     */
+    private long measureFrames() {
+        long[] times = new long[ROUNDS];
+        // Warm up before measuring
+        drawFrames(mStart, FRAMES);
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            drawFrames(mStart, FRAMES);
+            times[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[ROUNDS / 2] / FRAMES;
+    }
+
+    private void drawFrames(long start, int frames) {
+        for (int i = 0; i < frames; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * 1000L);
+        }
+    }
+}
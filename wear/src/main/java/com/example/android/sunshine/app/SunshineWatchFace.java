@@ -23,11 +23,7 @@ import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.os.Bundle;
 import android.os.Handler;
@@ -41,6 +37,7 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.shared.WeatherConditions;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -55,10 +52,6 @@ import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -69,16 +62,24 @@ import java.util.concurrent.TimeUnit;
 public class SunshineWatchFace extends CanvasWatchFaceService {
 
     private static final String TAG = SunshineWatchFace.class.getSimpleName();
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-    private static final Typeface LIGHT_TYPEFACE =
-            Typeface.create("sans-serif-light", Typeface.NORMAL);
 
     private static final String SUNSHINE_PATH = "/sunshine";
     private static final String HIGH_TEMP_KEY = "HIGH_TEMP";
     private static final String LOW_TEMP_KEY = "LOW_TEMP";
     private static final String WEATHER_ID_KEY = "WEATHER_ID";
 
+    // Icons indexed by weather id.  See WeatherConditions.
+    private static final int[] ICON_RESOURCES = WeatherConditions.buildResourceTable(new int[]{
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    });
+
     private int mHighTemp = 41;
     private int mLowTemp = 37;
     private int mWeatherId = -1;
@@ -135,33 +136,15 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         private long lastUpdateTime;
         private long lastRequestTime = -1;
 
-        private Paint mBackgroundPaint;
-        private Paint mHourPaint, mMinutePaint, mColonPaint, mDateTextPaint, mHighTempPaint, mLowTempPaint, mLinePaint, mIconPaint;
-
-        // Y is offset from the top
-        private float mYDateOffset, mYTempOffset, mYLineOffset, mYIconOffset;
-
-        // note: X is offset from the center (bounds.centerX())
-        private float mXHourOffset, mXColonOffset, mXMinuteOffset, mXIconOffset, mXHighTempOffset, mXLowTempOffset;
-
-        private float mColonWidth, mHourWidth, mHighTempWidth, mTempPadding;
-        private float mDateHeight, mTempHeight;
-
-        private static final String SAMPLE_HOUR = "00";
-        private static final String SAMPLE_TEMP = "88" + (char) 0x00B0;
-        private static final String SAMPLE_DATE = "Thu, Jun 22 2016";
-
-        private static final float PADDING_DATE_SCALE = 2f;
-        private static final float PADDING_TEMP_SCALE = 3f;
-        private static final float ICON_SCALING_FACTOR = 2f;
+        private WatchFaceRenderer mRenderer;
 
         private static final long MAX_INTER_UPDATE_MILLISECONDS = 6*60*60*1000; // 6 hours
+        private static final long MIN_INTER_REQUEST_MILLISECONDS = 60*1000; // 1 minute
 
-        Calendar mTime;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime = new GregorianCalendar(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+                mRenderer.setTimeZone(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
             }
         };
 
@@ -171,7 +154,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         int mTapCount;
 
         float mXOffset;
-        float mYTimeOffset;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -206,6 +188,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     mBitmap = ((BitmapDrawable) ContextCompat.getDrawable(getApplicationContext(),
                             getIconResourceForWeatherCondition(mWeatherId))).getBitmap();
                 }
+                mRenderer.setWeather(mHighTemp, mLowTemp, mBitmap);
+                invalidate();
 
                 if (dataMap.containsKey("timestamp")) {
                     Log.d(TAG, "timestamp: " + dataMap.get("timestamp"));
@@ -213,12 +197,23 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
         }
 
+        /**
+         * Asks the phone for the weather if there is none or it is out of date.  Called on time
+         * ticks rather than on each frame, and at most once a minute.
+         */
         private void sendDataRequestMessageIfNecessary() {
             long currentTime = System.currentTimeMillis();
 
             if (isWeatherDataLoaded && currentTime - lastUpdateTime < MAX_INTER_UPDATE_MILLISECONDS) {
                 return;
             }
+            if (lastRequestTime != -1 && currentTime - lastRequestTime < MIN_INTER_REQUEST_MILLISECONDS) {
+                return;
+            }
+            if (googleApiClient == null || !googleApiClient.isConnected() || remoteNodeId == null) {
+                return;
+            }
+            lastRequestTime = currentTime;
 
             byte[] data = null;
             if(!isWeatherDataLoaded) data = ByteBuffer
@@ -231,20 +226,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         public int getIconResourceForWeatherCondition(int weatherId) {
-            // Based on weather code data found at:
-            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-            if (weatherId >= 200 && weatherId <= 232) return R.drawable.ic_storm;
-            if (weatherId >= 300 && weatherId <= 321) return R.drawable.ic_light_rain;
-            if (weatherId >= 500 && weatherId <= 504) return R.drawable.ic_rain;
-            if (weatherId == 511) return R.drawable.ic_snow;
-            if (weatherId >= 520 && weatherId <= 531) return R.drawable.ic_rain;
-            if (weatherId >= 600 && weatherId <= 622) return R.drawable.ic_snow;
-            if (weatherId >= 701 && weatherId <= 761) return R.drawable.ic_fog;
-            if (weatherId == 761 || weatherId == 781) return R.drawable.ic_storm;
-            if (weatherId == 800) return R.drawable.ic_clear;
-            if (weatherId == 801) return R.drawable.ic_light_clouds;
-            if (weatherId >= 802 && weatherId <= 804) return R.drawable.ic_cloudy;
-            return -1;
+            return WeatherConditions.lookup(ICON_RESOURCES, weatherId);
         }
 
 
@@ -296,27 +278,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .addOnConnectionFailedListener(this)
                     .build();
 
-            Resources resources = SunshineWatchFace.this.getResources();
-            mYTimeOffset = resources.getDimension(R.dimen.digital_y_offset);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(ContextCompat.getColor(getApplicationContext(), R.color.background));
-
-            mHourPaint      = createTextPaint(R.color.digital_text, NORMAL_TYPEFACE);
-            mMinutePaint    = createTextPaint(R.color.digital_text, LIGHT_TYPEFACE);
-            mColonPaint     = createTextPaint(R.color.disabled_text_light, NORMAL_TYPEFACE);
-            mDateTextPaint  = createTextPaint(R.color.disabled_text_light, LIGHT_TYPEFACE);
-            mHighTempPaint  = createTextPaint(R.color.digital_text, NORMAL_TYPEFACE);
-            mLowTempPaint   = createTextPaint(R.color.disabled_text_light, LIGHT_TYPEFACE);
-
-            mLinePaint = new Paint();
-            mLinePaint.setColor(ContextCompat.getColor(getApplicationContext(), R.color.disabled_text_light));
-            mLowTempPaint.setAntiAlias(true);
-
-            mIconPaint = new Paint();
-            mIconPaint.setAntiAlias(true);
-
-            mTime = new GregorianCalendar(TimeZone.getDefault());
+            mRenderer = new WatchFaceRenderer(getApplicationContext());
             lastUpdateTime = System.currentTimeMillis();
         }
 
@@ -328,14 +290,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColorId, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(ContextCompat.getColor(getApplicationContext(), textColorId));
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -343,7 +297,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (visible) {
                 registerReceiver();
                 // Update time zone in case it changed while we weren't visible.
-                mTime = new GregorianCalendar(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 googleApiClient.connect();
             } else {
                 unregisterReceiver();
@@ -381,53 +335,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             boolean isRound = insets.isRound();
             mXOffset = resources.getDimension(isRound
                     ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float timeTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size);
-            float dateTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
-            float tempTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
-
-            mHourPaint.setTextSize(timeTextSize);
-            mMinutePaint.setTextSize(timeTextSize);
-            mColonPaint.setTextSize(timeTextSize);
-
-            mDateTextPaint.setTextSize(dateTextSize);
-
-            mHighTempPaint.setTextSize(tempTextSize);
-            mLowTempPaint.setTextSize(tempTextSize);
-
-            calculateBounds();
-        }
-
-        private void calculateBounds(){
-            mColonWidth = mColonPaint.measureText(":");
-            mHighTempWidth = mHighTempPaint.measureText(SAMPLE_TEMP);
-            mHourWidth = mHourPaint.measureText(SAMPLE_HOUR);
-            mTempPadding = mHighTempWidth/3;
-
-            Rect textBounds = new Rect();
-
-            mHourPaint.getTextBounds(SAMPLE_HOUR,0, 1, textBounds);
-
-            mHighTempPaint.getTextBounds(SAMPLE_TEMP, 0, 1, textBounds);
-            mTempHeight = textBounds.height();
-
-            mDateTextPaint.getTextBounds(SAMPLE_DATE, 0, SAMPLE_DATE.length()-1, textBounds);
-            mDateHeight = textBounds.height();
-
-            mYDateOffset = mYTimeOffset + mDateHeight* PADDING_DATE_SCALE;
-            mYLineOffset = mYDateOffset + mTempHeight* (PADDING_TEMP_SCALE-1)/2;
-            mYTempOffset = mYDateOffset + mTempHeight* PADDING_TEMP_SCALE;
-            mYIconOffset = mYTempOffset - mTempHeight*(1+ICON_SCALING_FACTOR)/2;
-
-            mXHourOffset = - mColonWidth/2 - mHourWidth;
-            mXColonOffset = - mColonWidth/2;
-            mXMinuteOffset = mColonWidth/2;
-
-            mXIconOffset = - mHighTempWidth/2 - mTempPadding - mTempHeight*ICON_SCALING_FACTOR;
-            mXHighTempOffset = - mHighTempWidth/2;
-            mXLowTempOffset = mHighTempWidth/2 + mTempPadding;
+            mRenderer.setRound(isRound);
         }
 
         @Override
@@ -439,6 +347,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            sendDataRequestMessageIfNecessary();
             invalidate();
         }
 
@@ -447,16 +356,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    boolean antiAlias = !inAmbientMode;
-                    mHourPaint.setAntiAlias(antiAlias);
-                    mColonPaint.setAntiAlias(antiAlias);
-                    mMinutePaint.setAntiAlias(antiAlias);
-                    mDateTextPaint.setAntiAlias(antiAlias);
-                    mHighTempPaint.setAntiAlias(antiAlias);
-                    mLowTempPaint.setAntiAlias(antiAlias);
-                    mIconPaint.setAntiAlias(antiAlias);
-                }
+                mRenderer.setAmbient(inAmbientMode, mLowBitAmbient);
                 invalidate();
             }
 
@@ -482,7 +382,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
                     mTapCount++;
-                    mBackgroundPaint.setColor(ContextCompat.getColor(getApplicationContext(),
+                    mRenderer.setBackgroundColor(ContextCompat.getColor(getApplicationContext(),
                             mTapCount % 2 == 0 ? R.color.background : R.color.background2));
 //                    sendDataRequestMessageIfNecessary();
                     break;
@@ -492,47 +392,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            sendDataRequestMessageIfNecessary();
-
-            mTime = new GregorianCalendar(mTime.getTimeZone());
-            String timeText = new SimpleDateFormat("HH:mm", Locale.getDefault()).format(mTime.getTime());
-            String dateText = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault()).format(mTime.getTime()).toUpperCase();
-
-            String highTempText = String.valueOf(mHighTemp) + (char) 0x00B0;
-            String lowTempText = String.valueOf(mLowTemp) + (char) 0x00B0;
-
-            float centerX = bounds.centerX();
-
-            canvas.drawText(timeText.substring(0,2), centerX + mXHourOffset, mYTimeOffset, mHourPaint);
-            canvas.drawText(":", centerX + mXColonOffset, mYTimeOffset, mColonPaint);
-            canvas.drawText(timeText.substring(3,5), centerX + mXMinuteOffset, mYTimeOffset, mMinutePaint);
-
-            canvas.drawText(dateText, centerX - mDateTextPaint.measureText(dateText)/2, mYDateOffset, mDateTextPaint);
-
-            canvas.drawLine(centerX - bounds.width()/10, mYLineOffset, centerX + bounds.width()/10,  mYLineOffset, mLinePaint);
-
-            // if no weather data, will not draw weather information
-            if(!isWeatherDataLoaded) return;
-
-            canvas.drawText(highTempText, centerX + mXHighTempOffset, mYTempOffset, mHighTempPaint);
-            canvas.drawText(lowTempText, centerX + mXLowTempOffset, mYTempOffset, mLowTempPaint);
-
-            if(mBitmap != null) {
-                Log.d(TAG, "draw Bitmap");
-                float intrinsicSize = 1f * mBitmap.getScaledHeight(canvas);
-                float scale = mTempHeight*ICON_SCALING_FACTOR / intrinsicSize;
-                Matrix matrix = new Matrix();
-                matrix.setScale(scale, scale);
-                matrix.postTranslate(centerX + mXIconOffset, mYIconOffset);
-                canvas.drawBitmap(mBitmap, matrix, new Paint());
-            }
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
         }
 
         /**
@@ -559,6 +419,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
          */
         private void handleUpdateTimeMessage() {
             invalidate();
+            sendDataRequestMessageIfNecessary();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
                 long delayMs = INTERACTIVE_UPDATE_RATE_MS
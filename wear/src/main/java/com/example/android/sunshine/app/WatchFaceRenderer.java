@@ -0,0 +1,453 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face: the time, the date and today's weather.
+ *
+ * {@link #draw(Canvas, Rect, long)} runs every second in interactive mode, so it doesn't
+ * allocate.  Every object it needs is created up front, and the text it draws is kept
+ * formatted: the time digits are rewritten in place when the minute changes, the date is
+ * formatted again when the day changes, and the temperatures when the weather does.  Both use
+ * the default locale, whose digits and date format are picked up again when it changes.
+ *
+ * Everything but the time is drawn into cached layers: a strip with the date and divider, and
+ * a strip with the weather, composited over the background into one bitmap.  Each strip is
+ * rendered again only when what it shows changes, and the composite only when a strip or the
+ * background does, so a frame is one bitmap copy and the time glyphs.
+ */
+class WatchFaceRenderer {
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final Typeface LIGHT_TYPEFACE =
+            Typeface.create("sans-serif-light", Typeface.NORMAL);
+
+    private static final String SAMPLE_HOUR = "00";
+    private static final String SAMPLE_TEMP = "88" + (char) 0x00B0;
+    private static final String SAMPLE_DATE = "Thu, Jun 22 2016";
+    private static final char[] COLON = {':'};
+
+    private static final float PADDING_DATE_SCALE = 2f;
+    private static final float PADDING_TEMP_SCALE = 3f;
+    private static final float ICON_SCALING_FACTOR = 2f;
+
+    private final Context mContext;
+    private final float mYTimeOffset;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mHourPaint, mMinutePaint, mColonPaint, mDateTextPaint, mHighTempPaint,
+            mLowTempPaint, mLinePaint, mIconPaint;
+
+    // Y is offset from the top
+    private float mYDateOffset, mYTempOffset, mYLineOffset, mYIconOffset;
+
+    // note: X is offset from the center (bounds.centerX())
+    private float mXHourOffset, mXColonOffset, mXMinuteOffset, mXIconOffset, mXHighTempOffset,
+            mXLowTempOffset;
+
+    private float mTempHeight;
+
+    // The rows of the screen covered by each strip
+    private int mDateLayerTop, mDateLayerBottom, mWeatherLayerTop, mWeatherLayerBottom;
+
+    private final Layer mDateLayer = new Layer();
+    private final Layer mWeatherLayer = new Layer();
+    private Bitmap mStaticBitmap;
+    private Canvas mStaticCanvas;
+    private boolean mStaticDirty = true;
+    private boolean mLayersEnabled = true;
+
+    // For tests
+    private int mLayerRenderCount;
+    private int mCompositeCount;
+
+    private Calendar mTime;
+    // The locale the digits and date are formatted for, checked when the minute changes
+    private Locale mLocale;
+    private char mZeroDigit;
+    private SimpleDateFormat mDateFormat;
+
+    // The text last drawn, and what it was formatted for
+    private final char[] mHourText = new char[2];
+    private final char[] mMinuteText = new char[2];
+    private int mTextMinute = -1;
+    private String mDateText;
+    private float mDateWidth;
+    private int mTextDay = -1;
+
+    private boolean mWeatherLoaded;
+    private String mHighTempText;
+    private String mLowTempText;
+    private Bitmap mIcon;
+    private final Matrix mIconMatrix = new Matrix();
+
+    private boolean mAmbient;
+
+    WatchFaceRenderer(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+        mYTimeOffset = resources.getDimension(R.dimen.digital_y_offset);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(ContextCompat.getColor(context, R.color.background));
+
+        mHourPaint      = createTextPaint(R.color.digital_text, NORMAL_TYPEFACE);
+        mMinutePaint    = createTextPaint(R.color.digital_text, LIGHT_TYPEFACE);
+        mColonPaint     = createTextPaint(R.color.disabled_text_light, NORMAL_TYPEFACE);
+        mDateTextPaint  = createTextPaint(R.color.disabled_text_light, LIGHT_TYPEFACE);
+        mHighTempPaint  = createTextPaint(R.color.digital_text, NORMAL_TYPEFACE);
+        mLowTempPaint   = createTextPaint(R.color.disabled_text_light, LIGHT_TYPEFACE);
+
+        mLinePaint = new Paint();
+        mLinePaint.setColor(ContextCompat.getColor(context, R.color.disabled_text_light));
+
+        mIconPaint = new Paint();
+        mIconPaint.setAntiAlias(true);
+
+        updateLocale();
+        setTimeZone(TimeZone.getDefault());
+    }
+
+    private Paint createTextPaint(int textColorId, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(ContextCompat.getColor(mContext, textColorId));
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Sizes the text for a round or square screen.
+     */
+    void setRound(boolean isRound) {
+        // Load resources that have alternate values for round watches.
+        Resources resources = mContext.getResources();
+        float timeTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size);
+        float dateTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
+        float tempTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
+
+        mHourPaint.setTextSize(timeTextSize);
+        mMinutePaint.setTextSize(timeTextSize);
+        mColonPaint.setTextSize(timeTextSize);
+
+        mDateTextPaint.setTextSize(dateTextSize);
+
+        mHighTempPaint.setTextSize(tempTextSize);
+        mLowTempPaint.setTextSize(tempTextSize);
+
+        calculateBounds();
+    }
+
+    private void calculateBounds() {
+        float colonWidth = mColonPaint.measureText(":");
+        float highTempWidth = mHighTempPaint.measureText(SAMPLE_TEMP);
+        float hourWidth = mHourPaint.measureText(SAMPLE_HOUR);
+        float tempPadding = highTempWidth / 3;
+
+        Rect textBounds = new Rect();
+
+        mHighTempPaint.getTextBounds(SAMPLE_TEMP, 0, 1, textBounds);
+        mTempHeight = textBounds.height();
+
+        mDateTextPaint.getTextBounds(SAMPLE_DATE, 0, SAMPLE_DATE.length() - 1, textBounds);
+        float dateHeight = textBounds.height();
+
+        Paint.FontMetrics dateMetrics = mDateTextPaint.getFontMetrics();
+        Paint.FontMetrics tempMetrics = mHighTempPaint.getFontMetrics();
+
+        mYDateOffset = mYTimeOffset + dateHeight * PADDING_DATE_SCALE;
+        mYLineOffset = mYDateOffset + mTempHeight * (PADDING_TEMP_SCALE - 1) / 2;
+        mYTempOffset = mYDateOffset + mTempHeight * PADDING_TEMP_SCALE;
+        mYIconOffset = mYTempOffset - mTempHeight * (1 + ICON_SCALING_FACTOR) / 2;
+
+        mXHourOffset = - colonWidth / 2 - hourWidth;
+        mXColonOffset = - colonWidth / 2;
+        mXMinuteOffset = colonWidth / 2;
+
+        mXIconOffset = - highTempWidth / 2 - tempPadding - mTempHeight * ICON_SCALING_FACTOR;
+        mXHighTempOffset = - highTempWidth / 2;
+        mXLowTempOffset = highTempWidth / 2 + tempPadding;
+
+        float iconHeight = mTempHeight * ICON_SCALING_FACTOR;
+        mDateLayerTop = (int) Math.floor(mYDateOffset + dateMetrics.top);
+        mDateLayerBottom = (int) Math.ceil(
+                Math.max(mYDateOffset + dateMetrics.bottom, mYLineOffset + 1));
+        mWeatherLayerTop = (int) Math.floor(
+                Math.min(mYIconOffset, mYTempOffset + tempMetrics.top));
+        mWeatherLayerBottom = (int) Math.ceil(
+                Math.max(mYIconOffset + iconHeight, mYTempOffset + tempMetrics.bottom));
+
+        // Measured and laid out again with the new sizes
+        mTextDay = -1;
+        mStaticBitmap = null;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTime = new GregorianCalendar(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        mTextMinute = -1;
+        mTextDay = -1;
+    }
+
+    /**
+     * Switches to or from ambient mode.  On screens with low-bit ambient mode the text is drawn
+     * without anti-aliasing.
+     */
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        mAmbient = ambient;
+        mStaticDirty = true;
+        if (lowBitAmbient) {
+            mDateLayer.dirty = true;
+            mWeatherLayer.dirty = true;
+            boolean antiAlias = !ambient;
+            mHourPaint.setAntiAlias(antiAlias);
+            mColonPaint.setAntiAlias(antiAlias);
+            mMinutePaint.setAntiAlias(antiAlias);
+            mDateTextPaint.setAntiAlias(antiAlias);
+            mHighTempPaint.setAntiAlias(antiAlias);
+            mLowTempPaint.setAntiAlias(antiAlias);
+            mIconPaint.setAntiAlias(antiAlias);
+        }
+    }
+
+    void setBackgroundColor(int color) {
+        mBackgroundPaint.setColor(color);
+        mStaticDirty = true;
+    }
+
+    /**
+     * Sets today's weather.
+     *
+     * @param icon the condition's icon, or null
+     */
+    void setWeather(int highTemp, int lowTemp, Bitmap icon) {
+        mWeatherLoaded = true;
+        mHighTempText = String.valueOf(highTemp) + (char) 0x00B0;
+        mLowTempText = String.valueOf(lowTemp) + (char) 0x00B0;
+        mIcon = icon;
+        mWeatherLayer.dirty = true;
+    }
+
+    /**
+     * Whether to draw from the cached layers, or everything on each frame.  For comparison in
+     * tests; the layers are enabled by default.
+     */
+    void setLayersEnabled(boolean enabled) {
+        mLayersEnabled = enabled;
+        mStaticBitmap = null;
+    }
+
+    /**
+     * Returns how many times a strip was rendered.
+     */
+    int getLayerRenderCount() {
+        return mLayerRenderCount;
+    }
+
+    /**
+     * Returns how many times the strips were composited over the background.
+     */
+    int getCompositeCount() {
+        return mCompositeCount;
+    }
+
+    /**
+     * Draws the watch face as it is at {@code timeMillis}.
+     */
+    void draw(Canvas canvas, Rect bounds, long timeMillis) {
+        mTime.setTimeInMillis(timeMillis);
+        updateText();
+
+        int width = bounds.width();
+        int height = bounds.height();
+        float centerX = bounds.centerX();
+
+        if (mLayersEnabled) {
+            updateLayers(width, height, centerX);
+            canvas.drawBitmap(mStaticBitmap, 0, 0, null);
+        } else {
+            drawBackground(canvas, width, height);
+            drawDate(canvas, width, centerX);
+            drawWeather(canvas, centerX);
+        }
+
+        canvas.drawText(mHourText, 0, 2, centerX + mXHourOffset, mYTimeOffset, mHourPaint);
+        canvas.drawText(COLON, 0, 1, centerX + mXColonOffset, mYTimeOffset, mColonPaint);
+        canvas.drawText(mMinuteText, 0, 2, centerX + mXMinuteOffset, mYTimeOffset, mMinutePaint);
+    }
+
+    /**
+     * Renders the strips that changed, and composites them again if any did.
+     */
+    private void updateLayers(int width, int height, float centerX) {
+        if (mStaticBitmap == null
+                || mStaticBitmap.getWidth() != width || mStaticBitmap.getHeight() != height) {
+            mStaticBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mStaticCanvas = new Canvas(mStaticBitmap);
+            mDateLayer.resize(width, mDateLayerTop, mDateLayerBottom);
+            mWeatherLayer.resize(width, mWeatherLayerTop, mWeatherLayerBottom);
+            mStaticDirty = true;
+        }
+
+        if (mDateLayer.dirty) {
+            drawDate(mDateLayer.begin(), width, centerX);
+            mDateLayer.dirty = false;
+            mStaticDirty = true;
+            mLayerRenderCount++;
+        }
+        if (mWeatherLayer.dirty) {
+            drawWeather(mWeatherLayer.begin(), centerX);
+            mWeatherLayer.dirty = false;
+            mStaticDirty = true;
+            mLayerRenderCount++;
+        }
+        if (mStaticDirty) {
+            drawBackground(mStaticCanvas, width, height);
+            mDateLayer.drawTo(mStaticCanvas);
+            mWeatherLayer.drawTo(mStaticCanvas);
+            mStaticDirty = false;
+            mCompositeCount++;
+        }
+    }
+
+    private void drawBackground(Canvas canvas, int width, int height) {
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            canvas.drawRect(0, 0, width, height, mBackgroundPaint);
+        }
+    }
+
+    private void drawDate(Canvas canvas, int width, float centerX) {
+        canvas.drawText(mDateText, centerX - mDateWidth / 2, mYDateOffset, mDateTextPaint);
+
+        canvas.drawLine(centerX - width / 10, mYLineOffset,
+                centerX + width / 10, mYLineOffset, mLinePaint);
+    }
+
+    private void drawWeather(Canvas canvas, float centerX) {
+        // if no weather data, will not draw weather information
+        if (!mWeatherLoaded) return;
+
+        canvas.drawText(mHighTempText, centerX + mXHighTempOffset, mYTempOffset, mHighTempPaint);
+        canvas.drawText(mLowTempText, centerX + mXLowTempOffset, mYTempOffset, mLowTempPaint);
+
+        if (mIcon != null) {
+            float intrinsicSize = 1f * mIcon.getScaledHeight(canvas);
+            float scale = mTempHeight * ICON_SCALING_FACTOR / intrinsicSize;
+            mIconMatrix.setScale(scale, scale);
+            mIconMatrix.postTranslate(centerX + mXIconOffset, mYIconOffset);
+            canvas.drawBitmap(mIcon, mIconMatrix, mIconPaint);
+        }
+    }
+
+    /**
+     * Formats the time and date again if the minute or the day changed since the last frame.
+     */
+    private void updateText() {
+        int minuteOfDay = mTime.get(Calendar.HOUR_OF_DAY) * 60 + mTime.get(Calendar.MINUTE);
+        if (minuteOfDay != mTextMinute) {
+            mTextMinute = minuteOfDay;
+            updateLocale();
+            writeTwoDigits(mHourText, minuteOfDay / 60, mZeroDigit);
+            writeTwoDigits(mMinuteText, minuteOfDay % 60, mZeroDigit);
+        }
+
+        int day = mTime.get(Calendar.YEAR) * 1000 + mTime.get(Calendar.DAY_OF_YEAR);
+        if (day != mTextDay) {
+            mTextDay = day;
+            mDateText = mDateFormat.format(mTime.getTime()).toUpperCase();
+            mDateWidth = mDateTextPaint.measureText(mDateText);
+            mDateLayer.dirty = true;
+        }
+    }
+
+    /**
+     * Rebuilds the date format and digits if the default locale changed.
+     */
+    private void updateLocale() {
+        // Locale.getDefault() returns the shared instance, so this is only a reference check
+        Locale locale = Locale.getDefault();
+        if (locale == mLocale) return;
+        mLocale = locale;
+        mZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", locale);
+        if (mTime != null) {
+            mDateFormat.setTimeZone(mTime.getTimeZone());
+        }
+        mTextDay = -1;
+    }
+
+    private static void writeTwoDigits(char[] text, int value, char zeroDigit) {
+        text[0] = (char) (zeroDigit + value / 10);
+        text[1] = (char) (zeroDigit + value % 10);
+    }
+
+    /**
+     * A strip of the screen, cached in a bitmap of its own.  Its canvas is translated, so that
+     * it is drawn into with the coordinates of the screen.
+     */
+    private static class Layer {
+        Bitmap bitmap;
+        Canvas canvas;
+        int top;
+        boolean dirty = true;
+
+        void resize(int width, int top, int bottom) {
+            int height = Math.max(1, bottom - top);
+            if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                canvas = new Canvas(bitmap);
+                this.top = 0;
+            }
+            canvas.translate(0, this.top - top);
+            this.top = top;
+            dirty = true;
+        }
+
+        Canvas begin() {
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return canvas;
+        }
+
+        void drawTo(Canvas target) {
+            target.drawBitmap(bitmap, 0, top, null);
+        }
+    }
+}